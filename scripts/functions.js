@@ -10,6 +10,8 @@
 
 endpoint.generatePdf = {};
 
+endpoint.generatePdfBatch = {};
+
 endpoint.mergeDocuments = {};
 
 endpoint.splitDocument = {};
@@ -26,6 +28,8 @@ endpoint.addImages = {};
 
 endpoint.convertPdfToImages = {};
 
+endpoint.stats = {};
+
 endpoint.generatePdf = function(template, data, settings, callbackData, callbacks) {
     if (!settings || typeof settings != 'object') {
         settings = {};
@@ -39,7 +43,30 @@ endpoint.generatePdf = function(template, data, settings, callbackData, callback
     return endpoint._generatePdf(options, callbackData, callbacks);
 };
 
-endpoint.mergeDocuments = function(documents, callbackData, callbacks) {
+endpoint.generatePdfBatch = function(template, records, settings, combine, callbackData, callbacks) {
+    if (!settings || typeof settings != 'object') {
+        settings = {};
+    }
+    if (!template || !records || !records.length) {
+        sys.logs.error('Invalid argument received. This helper should receive the following parameters as non-empty strings: [template,records].');
+        return;
+    }
+    sys.logs.debug('[pdf-generator] from: generatePdfBatch');
+    var options = {template: template, records: records, settings: settings, combine: !!combine};
+    return endpoint._generatePdfBatch(options, callbackData, callbacks);
+};
+
+endpoint.mergeDocuments = function(documents, settings, callbackData, callbacks) {
+    // previous versions received (documents, callbackData, callbacks, settings)
+    if (hasFunctions(callbackData) || (arguments.length == 2 && !isMergeSettings(settings))) {
+        var previousSettings = callbacks;
+        callbacks = callbackData;
+        callbackData = settings;
+        settings = previousSettings;
+    }
+    if (!settings || typeof settings != 'object') {
+        settings = {};
+    }
     if (!documents) {
         sys.logs.error('Invalid argument received. This helper should receive the following parameters as non-empty strings: [documents].');
         return;
@@ -51,7 +78,7 @@ endpoint.mergeDocuments = function(documents, callbackData, callbacks) {
         }
     }
     sys.logs.debug('[pdf-generator] from: mergeDocuments');
-    var options = {documents: documents};
+    var options = {documents: documents, settings: settings};
     return endpoint._mergeDocuments(options, callbackData, callbacks);
 };
 
@@ -125,6 +152,11 @@ endpoint.convertPdfToImages = function(fileIds, dpi, settings, callbackData, cal
     return endpoint._convertPdfToImages(options, callbackData, callbacks);
 };
 
+endpoint.stats = function() {
+    sys.logs.debug('[pdf-generator] from: stats');
+    return endpoint._stats({});
+};
+
 ////////////////////////////////////
 // Public API - Generic Functions //
 ////////////////////////////////////
@@ -221,6 +253,30 @@ var checkHttpOptions = function (url, options) {
     return options;
 };
 
+var hasFunctions = function (obj) {
+    if (!isObject(obj)) {
+        return false;
+    }
+    for (var key in obj) {
+        if (typeof obj[key] == 'function') {
+            return true;
+        }
+    }
+    return false;
+};
+
+var isMergeSettings = function (obj) {
+    if (!isObject(obj)) {
+        return false;
+    }
+    for (var key in obj) {
+        if (key != 'deduplicate') {
+            return false;
+        }
+    }
+    return true;
+};
+
 var isObject = function (obj) {
     return !!obj && stringType(obj) === '[object Object]'
 };
@@ -0,0 +1,174 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the work accepted by each async function, so a burst of requests is rejected with a
+ * retryable error instead of being queued in memory until the endpoint runs out of heap.
+ * <p>
+ * For each function it counts the jobs that are queued or running and the bytes of their payloads.
+ * A request is accepted only if both stay under the limits of the function, and the returned
+ * {@link Ticket} must be closed when the job ends.
+ */
+public class AdmissionControl {
+
+    private static Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    public static final int DEFAULT_MAX_JOBS = 100;
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private final int defaultMaxJobs;
+    private final long defaultMaxBytes;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    public AdmissionControl(int defaultMaxJobs, long defaultMaxBytes) {
+        this.defaultMaxJobs = defaultMaxJobs;
+        this.defaultMaxBytes = defaultMaxBytes;
+    }
+
+    /**
+     * Sets limits for a function different from the default ones.
+     *
+     * @param function name of the function
+     * @param maxJobs  jobs queued or running
+     * @param maxBytes bytes of the payloads of the jobs queued or running
+     */
+    public void setLimit(String function, int maxJobs, long maxBytes) {
+        limits.put(function, new Limit(function, maxJobs, maxBytes));
+    }
+
+    /**
+     * Overrides limits using a JSON map like {@code {"generatePdf": {"maxJobs": 200, "maxMegabytes": 64}}},
+     * where keys are function names without prefix. Missing values use the defaults.
+     */
+    public void setLimits(Json config) {
+        for (String function : config.keys()) {
+            Json limit = config.json(function);
+            if (limit == null) {
+                continue;
+            }
+            Integer maxJobs = limit.integer("maxJobs");
+            Integer maxMegabytes = limit.integer("maxMegabytes");
+            setLimit(function, maxJobs != null ? maxJobs : defaultMaxJobs,
+                    maxMegabytes != null ? maxMegabytes * 1024L * 1024 : defaultMaxBytes);
+            logger.info(String.format("Admission limits for [%s]: %s", function, limit.toString()));
+        }
+    }
+
+    /**
+     * Accepts a request or rejects it with a retryable error if the function is over its limits.
+     *
+     * @param function name of the function
+     * @param jobs     number of jobs queued by the request
+     * @param bytes    size of the payload of the request
+     * @return ticket to close when the jobs end
+     */
+    public Ticket admit(String function, int jobs, long bytes) {
+        Limit limit = limits.computeIfAbsent(function, name -> new Limit(name, defaultMaxJobs, defaultMaxBytes));
+        return limit.admit(jobs, bytes);
+    }
+
+    /**
+     * Jobs queued or running for the function.
+     */
+    public int getQueued(String function) {
+        Limit limit = limits.get(function);
+        return limit != null ? (int) limit.jobs.get() : 0;
+    }
+
+    public Json getStats() {
+        Json stats = Json.map();
+        for (Limit limit : limits.values()) {
+            stats.set(limit.function, Json.map()
+                    .set("queued", limit.jobs.get())
+                    .set("bytes", limit.bytes.get())
+                    .set("maxJobs", limit.maxJobs)
+                    .set("maxBytes", limit.maxBytes)
+                    .set("rejected", limit.rejected.get()));
+        }
+        return stats;
+    }
+
+    private static class Limit {
+
+        private final String function;
+        private final int maxJobs;
+        private final long maxBytes;
+        private final AtomicLong jobs = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        private Limit(String function, int maxJobs, long maxBytes) {
+            this.function = function;
+            this.maxJobs = maxJobs;
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized Ticket admit(int newJobs, long newBytes) {
+            long queued = jobs.get();
+            long inFlight = bytes.get();
+            // a request larger than the limits is accepted when nothing else is running, otherwise it would never be
+            if (queued > 0 && (queued + newJobs > maxJobs || inFlight + newBytes > maxBytes)) {
+                rejected.incrementAndGet();
+                logger.warn(String.format("Rejecting [%s] request, [%s] jobs and [%s] bytes in progress", function, queued, inFlight));
+                throw EndpointException.retryable(ErrorCode.GENERAL, String.format(
+                        "Too many requests in progress for %s (%s jobs, %s bytes). Try again later.", function, queued, inFlight));
+            }
+            jobs.addAndGet(newJobs);
+            bytes.addAndGet(newBytes);
+            return new Ticket(this, newJobs, newBytes);
+        }
+    }
+
+    /**
+     * Jobs accepted by {@link #admit}. Closing it releases them, and it can be closed more than once.
+     */
+    public static class Ticket implements Closeable {
+
+        private final Limit limit;
+        private final AtomicLong jobs;
+        private final AtomicLong bytes;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Ticket(Limit limit, int jobs, long bytes) {
+            this.limit = limit;
+            this.jobs = new AtomicLong(jobs);
+            this.bytes = new AtomicLong(bytes);
+        }
+
+        /**
+         * Adds bytes to a job already accepted, for example when images are embedded in its HTML.
+         */
+        public void addBytes(long size) {
+            if (!closed.get()) {
+                bytes.addAndGet(size);
+                limit.bytes.addAndGet(size);
+            }
+        }
+
+        /**
+         * Number of jobs queued or running for the function after this ticket was accepted.
+         */
+        public long getQueued() {
+            return limit.jobs.get();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                limit.jobs.addAndGet(-jobs.getAndSet(0));
+                limit.bytes.addAndGet(-bytes.getAndSet(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Loads PDF documents using a limited amount of heap for each one, so documents larger than the heap
+ * of the deployment profile can be processed.
+ * <p>
+ * Documents are read from a file of the job workspace instead of being copied to the heap, and the
+ * streams PDFBox decodes are kept in memory up to the budget of a document and then written to a
+ * scratch file in the same workspace. The budget is a share of the maximum heap, which is set by the
+ * profile of the endpoint, divided by the workers that process documents at the same time. Documents
+ * much smaller than the budget are kept in memory without a scratch file.
+ */
+public class DocumentLoader {
+
+    private static Logger logger = LoggerFactory.getLogger(DocumentLoader.class);
+
+    private static final double HEAP_SHARE = 0.25;
+    private static final long MIN_BUDGET = 4L * 1024 * 1024;
+    // decoded streams usually take several times the size of the file
+    private static final int MEMORY_ONLY_FACTOR = 4;
+
+    private static volatile long budget = budget(3);
+
+    /**
+     * Sets the budget of each document from the maximum heap.
+     *
+     * @param workers documents processed at the same time
+     */
+    public static void configure(int workers) {
+        budget = budget(workers);
+        logger.info(String.format("Documents use up to [%s] bytes of heap before using scratch files", budget));
+    }
+
+    private static long budget(int workers) {
+        return Math.max(MIN_BUDGET, (long) (Runtime.getRuntime().maxMemory() * HEAP_SHARE / Math.max(1, workers)));
+    }
+
+    public static long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Memory setting for a document.
+     *
+     * @param size      size of the file of the document, or -1 if it is not known
+     * @param workspace workspace of the job, where scratch files are written
+     */
+    public static MemoryUsageSetting memoryUsage(long size, JobWorkspace workspace) {
+        if (size >= 0 && size * MEMORY_ONLY_FACTOR <= budget) {
+            return MemoryUsageSetting.setupMainMemoryOnly();
+        }
+        return MemoryUsageSetting.setupMixed(budget).setTempDir(workspace.getDirectory());
+    }
+
+    public static PDDocument load(File file, JobWorkspace workspace) throws IOException {
+        return PDDocument.load(file, memoryUsage(file.length(), workspace));
+    }
+
+    /**
+     * Writes the stream to a file of the workspace and loads the document from it. The stream is not closed.
+     */
+    public static PDDocument load(InputStream is, JobWorkspace workspace) throws IOException {
+        File file = workspace.createFile("document-", ".pdf");
+        java.nio.file.Files.copy(is, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return load(file, workspace);
+    }
+
+    /**
+     * Creates an empty document, like the result of a merge, whose size is not known in advance.
+     */
+    public static PDDocument create(JobWorkspace workspace) {
+        return new PDDocument(memoryUsage(-1, workspace));
+    }
+}
@@ -0,0 +1,321 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.pdf.ITextOutputDevice;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextUserAgent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders documents inside the endpoint with Flying Saucer and OpenPDF, without starting external
+ * processes.
+ * <p>
+ * The HTML is parsed with jsoup, so templates do not need to be valid XHTML. Page size, orientation
+ * and margins are translated to an {@code @page} rule. Header and footer are added to the document
+ * as CSS running elements placed in the page margins, and elements with id or class {@code page}
+ * and {@code topage} inside them show the page number and the total of pages, as the values that
+ * wkhtmltopdf passes to header and footer scripts. Scripts are not executed.
+ * <p>
+ * The render runs in a separate thread that the worker waits for until the deadline of the document,
+ * so a template that takes too long fails with {@link RenderTimeoutException} and frees the worker.
+ * Layout can not be stopped, so a render that timed out keeps its thread until it ends, but it stops
+ * loading remote resources, which use connect and read timeouts bounded by the deadline too.
+ * <p>
+ * Renders use a fixed pool with one thread per render worker. A render that timed out holds its
+ * thread until it ends, and new renders fail right away while all threads are held that way, so
+ * templates that never finish can not use more threads than the configured workers.
+ */
+public class FlyingSaucerEngine implements RenderEngine {
+
+    public static final String NAME = "flyingSaucer";
+
+    private static Logger logger = LoggerFactory.getLogger(FlyingSaucerEngine.class);
+
+    private static final String POM_PROPERTIES = "/META-INF/maven/org.xhtmlrenderer/flying-saucer-pdf-openpdf/pom.properties";
+    private static final int DEFAULT_MARGIN = 10;
+    private static final int MAX_RESOURCE_TIMEOUT = 30 * 1000;
+    private static final String HEADER_ID = "pdf-running-header";
+    private static final String FOOTER_ID = "pdf-running-footer";
+
+    private static final int DEFAULT_THREADS = 3;
+
+    private static final AtomicInteger renderThreads = new AtomicInteger();
+    private static final AtomicInteger runawayRenders = new AtomicInteger();
+
+    private static volatile ExecutorService renderExecutor = newPool(DEFAULT_THREADS);
+    private static volatile Semaphore renderSlots = new Semaphore(DEFAULT_THREADS);
+
+    private volatile String version;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getVersion() {
+        String current = version;
+        if (current == null) {
+            String pdfVersion = null;
+            try (InputStream in = ITextRenderer.class.getResourceAsStream(POM_PROPERTIES)) {
+                if (in != null) {
+                    Properties properties = new Properties();
+                    properties.load(in);
+                    pdfVersion = properties.getProperty("version");
+                }
+            } catch (IOException e) {
+                logger.debug("Can not read Flying Saucer version", e);
+            }
+            current = NAME + " " + (pdfVersion != null ? pdfVersion : "unknown");
+            version = current;
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the pool of render threads.
+     *
+     * @param threads renders at the same time, usually the number of render workers
+     */
+    public static void configure(int threads) {
+        ExecutorService previous = renderExecutor;
+        renderSlots = new Semaphore(Math.max(1, threads));
+        renderExecutor = newPool(threads);
+        previous.shutdown();
+    }
+
+    private static ExecutorService newPool(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "pdf-flying-saucer-" + renderThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Renders that exceeded their deadline and are still running.
+     */
+    public static int getRunawayRenders() {
+        return runawayRenders.get();
+    }
+
+    @Override
+    public InputStream render(RenderJob job) throws IOException {
+        long timeout = job.getTimeout();
+        Semaphore slots = renderSlots;
+        if (!slots.tryAcquire()) {
+            throw new IOException(String.format("Document can not be rendered, [%s] renders that exceeded their deadline are still running",
+                    runawayRenders.get()));
+        }
+        RenderTask task = new RenderTask(job, slots);
+        Future<File> render;
+        try {
+            render = renderExecutor.submit(task);
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw new IOException("Document can not be rendered, the render pool was stopped", e);
+        }
+        try {
+            File target = timeout > 0 ? render.get(timeout, TimeUnit.MILLISECONDS) : render.get();
+            return FileUtils.openInputStream(target);
+        } catch (TimeoutException e) {
+            task.abandon();
+            logger.warn(String.format("Render exceeded its deadline of [%s] ms", timeout));
+            throw new RenderTimeoutException(timeout);
+        } catch (InterruptedException e) {
+            task.abandon();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Render was interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("HTML can not be converted", cause);
+        }
+    }
+
+    private File renderToFile(RenderJob job) throws IOException {
+        Document document = Jsoup.parse(job.getHtml());
+        document.head().appendElement("style").appendText(pageStyle(job));
+        if (job.getFooterHtml() != null) {
+            addRunningElement(document, FOOTER_ID, "pdfFooter", job.getFooterHtml());
+        }
+        if (job.getHeaderHtml() != null) {
+            addRunningElement(document, HEADER_ID, "pdfHeader", job.getHeaderHtml());
+        }
+
+        ITextRenderer renderer = new ITextRenderer();
+        TimeoutUserAgent userAgent = new TimeoutUserAgent(renderer.getOutputDevice(), (int) Math.min(job.getTimeout(), MAX_RESOURCE_TIMEOUT));
+        userAgent.setSharedContext(renderer.getSharedContext());
+        renderer.getSharedContext().setUserAgentCallback(userAgent);
+        renderer.setDocument(new W3CDom().fromJsoup(document), null);
+        renderer.layout();
+
+        File target = job.getWorkspace().createFile("pdf-flying-saucer-", ".pdf");
+        try (OutputStream os = FileUtils.openOutputStream(target)) {
+            renderer.createPDF(os);
+        } catch (Exception e) {
+            throw new IOException("HTML can not be converted", e);
+        }
+        return target;
+    }
+
+    /**
+     * Running elements must come before the content of the page where they start, so they are
+     * added at the beginning of the body.
+     */
+    private void addRunningElement(Document document, String id, String name, String html) {
+        Document source = Jsoup.parse(html);
+        for (Element style : source.head().select("style")) {
+            document.head().appendChild(style.clone());
+        }
+        Element running = document.body().prependElement("div");
+        running.attr("id", id);
+        running.attr("style", "position: running(" + name + ");");
+        running.html(source.body().html());
+    }
+
+    private String pageStyle(RenderJob job) {
+        Json settings = job.getSettings();
+        String pageSize = settings.string("pageSize");
+        if (StringUtils.isBlank(pageSize)) {
+            pageSize = "A4";
+        }
+        String orientation = settings.string("orientation");
+        boolean landscape = StringUtils.isNotBlank(orientation) && orientation.toLowerCase().equals("landscape");
+
+        StringBuilder css = new StringBuilder();
+        css.append("@page { size: ").append(pageSize.toLowerCase()).append(landscape ? " landscape" : "").append("; ");
+        css.append("margin: ")
+                .append(margin(settings, "marginTop")).append("mm ")
+                .append(margin(settings, "marginRight")).append("mm ")
+                .append(margin(settings, "marginBottom")).append("mm ")
+                .append(margin(settings, "marginLeft")).append("mm; ");
+        if (job.getHeaderHtml() != null) {
+            css.append("@top-center { content: element(pdfHeader); } ");
+        }
+        if (job.getFooterHtml() != null) {
+            css.append("@bottom-center { content: element(pdfFooter); } ");
+        }
+        css.append("}\n");
+        for (String id : new String[]{HEADER_ID, FOOTER_ID}) {
+            css.append("#").append(id).append(" #page:before, #").append(id).append(" .page:before { content: counter(page); }\n");
+            css.append("#").append(id).append(" #topage:before, #").append(id).append(" .topage:before { content: counter(pages); }\n");
+        }
+        return css.toString();
+    }
+
+    private int margin(Json settings, String name) {
+        Integer margin = settings.integer(name);
+        return margin != null ? margin : DEFAULT_MARGIN;
+    }
+
+    private static class TimeoutUserAgent extends ITextUserAgent {
+
+        private final int timeout;
+
+        private TimeoutUserAgent(ITextOutputDevice outputDevice, int timeout) {
+            super(outputDevice);
+            this.timeout = timeout;
+        }
+
+        @Override
+        protected InputStream openStream(String uri) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Render was cancelled");
+            }
+            URLConnection connection = new URL(uri).openConnection();
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            return connection.getInputStream();
+        }
+    }
+
+    /**
+     * Render running in the pool. It keeps its slot until it ends, even if the worker stopped waiting.
+     */
+    private class RenderTask implements Callable<File> {
+
+        private static final int WAITING = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3;
+
+        private final RenderJob job;
+        private final Semaphore slots;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile Thread thread;
+
+        private RenderTask(RenderJob job, Semaphore slots) {
+            this.job = job;
+            this.slots = slots;
+        }
+
+        @Override
+        public File call() throws IOException {
+            // an interrupt meant for a previous render of this thread is discarded
+            Thread.interrupted();
+            thread = Thread.currentThread();
+            if (!state.compareAndSet(WAITING, RUNNING)) {
+                thread = null;
+                slots.release();
+                throw new InterruptedIOException("Render was abandoned before it started");
+            }
+            try {
+                return renderToFile(job);
+            } finally {
+                thread = null;
+                if (state.getAndSet(DONE) == ABANDONED) {
+                    runawayRenders.decrementAndGet();
+                }
+                slots.release();
+            }
+        }
+
+        /**
+         * Called when the worker stops waiting. A running render is interrupted, which only stops the
+         * load of remote resources, and counted as runaway until it ends.
+         */
+        private void abandon() {
+            int previous = state.getAndUpdate(current -> current == DONE ? DONE : ABANDONED);
+            if (previous == RUNNING) {
+                runawayRenders.incrementAndGet();
+                Thread running = thread;
+                if (running != null) {
+                    running.interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide cache of the remote images used in templates, keyed by URL.
+ * <p>
+ * Entries are evicted in LRU order once the cached bytes exceed the configured size. When a spill
+ * directory is configured, evicted images are moved to disk instead of being dropped. Entries older
+ * than the TTL are revalidated with the ETag or Last-Modified returned by the server, so unchanged
+ * images are not downloaded again.
+ */
+public class ImageCache {
+
+    private static Logger logger = LoggerFactory.getLogger(ImageCache.class);
+
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    public static final long DEFAULT_TTL = 60L * 60 * 1000;
+
+    private static volatile ImageCache instance = new ImageCache(DEFAULT_MAX_BYTES, DEFAULT_TTL, null);
+
+    private final long maxBytes;
+    private final long ttl;
+    private final File spillDirectory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public static ImageCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replaces the shared cache with a new one using the given limits.
+     *
+     * @param maxBytes       maximum bytes kept in memory, and also on disk when spill is enabled
+     * @param ttl            milliseconds after which a cached image is revalidated
+     * @param spillDirectory directory where evicted images are written, or null to disable spill
+     */
+    public static void configure(long maxBytes, long ttl, File spillDirectory) {
+        instance = new ImageCache(maxBytes, ttl, spillDirectory);
+    }
+
+    ImageCache(long maxBytes, long ttl, File spillDirectory) {
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        this.spillDirectory = spillDirectory;
+        if (spillDirectory != null && !spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+            logger.warn(String.format("Image cache directory [%s] can not be created", spillDirectory));
+        }
+    }
+
+    /**
+     * Returns the image for the URL, downloading it only if it is not cached or if it changed on the server.
+     *
+     * @param url absolute URL of the image
+     * @return the image
+     * @throws IOException if the image can not be downloaded
+     */
+    public RemoteImage get(String url) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(url);
+        }
+        if (entry != null) {
+            RemoteImage cached = read(entry);
+            if (cached != null) {
+                if (System.currentTimeMillis() - entry.fetchedAt < ttl) {
+                    hits.incrementAndGet();
+                    bytesSaved.addAndGet(entry.size);
+                    return cached;
+                }
+                if (cached.getEtag() != null || cached.getLastModified() != null) {
+                    RemoteImage image = RemoteImage.fetch(url, cached.getEtag(), cached.getLastModified());
+                    if (image == null) {
+                        entry.fetchedAt = System.currentTimeMillis();
+                        revalidations.incrementAndGet();
+                        bytesSaved.addAndGet(entry.size);
+                        return cached;
+                    }
+                    misses.incrementAndGet();
+                    put(image);
+                    return image;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        RemoteImage image = RemoteImage.fetch(url);
+        put(image);
+        return image;
+    }
+
+    private RemoteImage read(Entry entry) {
+        RemoteImage image = entry.image;
+        if (image != null) {
+            return image;
+        }
+        File file = entry.file;
+        if (file != null) {
+            try {
+                return new RemoteImage(entry.url, FileUtils.readFileToByteArray(file), entry.contentType, entry.etag, entry.lastModified);
+            } catch (IOException e) {
+                logger.warn(String.format("Can not read cached image [%s]", file), e);
+            }
+        }
+        return null;
+    }
+
+    private void put(RemoteImage image) {
+        long size = image.getContent().length;
+        if (size > maxBytes) {
+            return;
+        }
+        Map<Entry, byte[]> toSpill = new LinkedHashMap<>();
+        synchronized (this) {
+            remove(entries.remove(image.getUrl()));
+            Entry entry = new Entry(image);
+            entries.put(image.getUrl(), entry);
+            memoryBytes += size;
+            Iterator<Entry> it = entries.values().iterator();
+            while (memoryBytes > maxBytes && it.hasNext()) {
+                Entry eldest = it.next();
+                if (eldest.image != null && eldest != entry) {
+                    memoryBytes -= eldest.size;
+                    evictions.incrementAndGet();
+                    if (spillDirectory != null) {
+                        toSpill.put(eldest, eldest.image.getContent());
+                        eldest.image = null;
+                    } else {
+                        eldest.removed = true;
+                        it.remove();
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Entry, byte[]> spilled : toSpill.entrySet()) {
+            spill(spilled.getKey(), spilled.getValue());
+        }
+    }
+
+    private void spill(Entry entry, byte[] content) {
+        File file = new File(spillDirectory, PdfFilesUtils.sha256(entry.url));
+        try {
+            FileUtils.writeByteArrayToFile(file, content);
+        } catch (IOException e) {
+            logger.warn(String.format("Can not spill image [%s] to disk", entry.url), e);
+            synchronized (this) {
+                entry.removed = true;
+                entries.remove(entry.url, entry);
+            }
+            return;
+        }
+        List<File> toDelete = new ArrayList<>();
+        synchronized (this) {
+            if (entry.removed) {
+                toDelete.add(file);
+            } else {
+                entry.file = file;
+                diskBytes += entry.size;
+                Iterator<Entry> it = entries.values().iterator();
+                while (diskBytes > maxBytes && it.hasNext()) {
+                    Entry eldest = it.next();
+                    if (eldest.file != null) {
+                        diskBytes -= eldest.size;
+                        eldest.removed = true;
+                        toDelete.add(eldest.file);
+                        it.remove();
+                    }
+                }
+            }
+        }
+        for (File f : toDelete) {
+            FileUtils.deleteQuietly(f);
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        entry.removed = true;
+        if (entry.image != null) {
+            memoryBytes -= entry.size;
+        } else if (entry.file != null) {
+            diskBytes -= entry.size;
+            FileUtils.deleteQuietly(entry.file);
+        }
+    }
+
+    public Json getStats() {
+        long hitCount = hits.get() + revalidations.get();
+        long total = hitCount + misses.get();
+        Json stats = Json.map();
+        synchronized (this) {
+            stats.set("entries", entries.size());
+            stats.set("memoryBytes", memoryBytes);
+            stats.set("diskBytes", diskBytes);
+        }
+        stats.set("hits", hits.get());
+        stats.set("revalidations", revalidations.get());
+        stats.set("misses", misses.get());
+        stats.set("hitRate", total > 0 ? (double) hitCount / total : 0d);
+        stats.set("bytesSaved", bytesSaved.get());
+        stats.set("evictions", evictions.get());
+        return stats;
+    }
+
+    private static class Entry {
+
+        private final String url;
+        private final long size;
+        private final String contentType;
+        private final String etag;
+        private final String lastModified;
+        private volatile RemoteImage image;
+        private volatile File file;
+        private volatile long fetchedAt;
+        private boolean removed;
+
+        private Entry(RemoteImage image) {
+            this.url = image.getUrl();
+            this.size = image.getContent().length;
+            this.contentType = image.getContentType();
+            this.etag = image.getEtag();
+            this.lastModified = image.getLastModified();
+            this.image = image;
+            this.fetchedAt = System.currentTimeMillis();
+        }
+    }
+}
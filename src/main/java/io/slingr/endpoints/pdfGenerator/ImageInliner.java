@@ -0,0 +1,287 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.apache.commons.lang.StringUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads the images referenced by {@code <img>} tags so they can be embedded in the HTML
+ * sent to the renderer. Images are taken from the shared {@link ImageCache} when possible.
+ * <p>
+ * Downloads run concurrently on a bounded pool shared by all renders, with a limit of concurrent
+ * requests per host. Images that fail or take longer than the timeout keep their original URL. Each
+ * image has its own timeout, counted from the moment its download starts, so a slow host does not
+ * use the time of the images of other hosts. Downloads waiting for a thread or a host permit wait
+ * at most one timeout more, counted from the moment they were submitted. An optional overall limit
+ * bounds the time a document waits for all its images.
+ * <p>
+ * Images are embedded as base64 data URLs, unless a {@link LocalImageStore} is configured. In that
+ * case they are written to local files and referenced with {@code file://} URLs, which keeps the HTML
+ * as small as the original template. Images that do not fit in the store are still embedded.
+ */
+public class ImageInliner {
+
+    private static Logger logger = LoggerFactory.getLogger(ImageInliner.class);
+
+    private static final int FETCH_THREADS = 8;
+    private static final int MAX_FETCHES_PER_HOST = 4;
+    public static final long DEFAULT_FETCH_TIMEOUT = 20000;
+
+    private static final AtomicInteger fetchThreads = new AtomicInteger();
+
+    private static final ExecutorService fetchExecutor = Executors.newFixedThreadPool(FETCH_THREADS, r -> {
+        Thread thread = new Thread(r, "pdf-image-fetch-" + fetchThreads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    private static volatile LocalImageStore localImageStore;
+    private static volatile long fetchTimeout = DEFAULT_FETCH_TIMEOUT;
+    private static volatile long totalTimeout = 0;
+
+    private static final Pattern IMG_TAG = Pattern.compile("(?i)<img\\b(?:[^>\"']|\"[^\"]*\"|'[^']*')*>");
+    private static final Pattern TAG_ATTRIBUTE = Pattern.compile("\\G[\\s/]*([^\\s=/>]+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+)))?");
+
+    /**
+     * Makes downloaded images to be referenced as files of the given store instead of data URLs.
+     *
+     * @param store the local store, or null to go back to data URLs
+     */
+    public static void useLocalFiles(LocalImageStore store) {
+        localImageStore = store;
+    }
+
+    /**
+     * Sets the time limits of the downloads.
+     *
+     * @param fetchTimeout milliseconds each image can take to download
+     * @param totalTimeout milliseconds to wait for all the images of a document, or 0 for no limit
+     */
+    public static void configure(long fetchTimeout, long totalTimeout) {
+        ImageInliner.fetchTimeout = fetchTimeout;
+        ImageInliner.totalTimeout = totalTimeout;
+        RemoteImage.configure(fetchTimeout);
+        logger.info(String.format("Images download timeout set to [%s] ms per image and [%s] ms per document", fetchTimeout, totalTimeout));
+    }
+
+    /**
+     * Downloads the images of the HTML and rewrites their {@code src} attributes in a single pass.
+     *
+     * @param html the HTML content
+     * @return the HTML with the downloaded images embedded
+     */
+    public static String inline(String html) {
+        return inline(html, findImageUrls(html));
+    }
+
+    /**
+     * Downloads the given images of the HTML and rewrites their {@code src} attributes, for callers
+     * that already looked for the images with {@link #findImageUrls}.
+     *
+     * @param html the HTML content
+     * @param urls the image URLs of the HTML
+     * @return the HTML with the downloaded images embedded
+     */
+    public static String inline(String html, Set<String> urls) {
+        if (urls.isEmpty()) {
+            return html;
+        }
+        return rewriteSources(html, fetchImages(urls));
+    }
+
+    /**
+     * Replaces the {@code src} attributes of {@code <img>} tags whose value is a key of the map with the
+     * mapped value. Other tags and text that looks like an attribute are not changed, like
+     * {@link #findImageUrls} does. The HTML is scanned once and copied once, whatever the number of images.
+     *
+     * @param html     the HTML content
+     * @param replaces original URLs and their replacements
+     * @return the rewritten HTML
+     */
+    public static String rewriteSources(String html, Map<String, String> replaces) {
+        if (replaces.isEmpty()) {
+            return html;
+        }
+        int extraLength = 0;
+        for (String replace : replaces.values()) {
+            extraLength += replace.length();
+        }
+        StringBuilder sb = new StringBuilder(html.length() + extraLength);
+        Matcher tag = IMG_TAG.matcher(html);
+        Matcher attribute = TAG_ATTRIBUTE.matcher(html);
+        int last = 0;
+        while (tag.find()) {
+            // attributes are read in order from the end of the tag name, so values are never taken as attributes
+            attribute.region(tag.start() + 4, tag.end() - 1);
+            while (attribute.find()) {
+                if (!"src".equalsIgnoreCase(attribute.group(1))) {
+                    continue;
+                }
+                int group = attribute.group(2) != null ? 2 : attribute.group(3) != null ? 3 : attribute.group(4) != null ? 4 : 0;
+                String replace = group > 0 ? replaces.get(Parser.unescapeEntities(attribute.group(group), true)) : null;
+                if (replace != null) {
+                    sb.append(html, last, attribute.start(group));
+                    if (group == 4) {
+                        sb.append('"').append(replace).append('"');
+                    } else {
+                        sb.append(replace);
+                    }
+                    last = attribute.end(group);
+                }
+                // only the first src attribute is used by the parser
+                break;
+            }
+        }
+        sb.append(html, last, html.length());
+        return sb.toString();
+    }
+
+    /**
+     * Extracts the distinct image URLs of the HTML and downloads each of them once.
+     *
+     * @param html the HTML content from which to extract image URLs
+     * @return a map with the original image URLs as keys and their data URLs or local file URLs as values.
+     * Images that could not be downloaded are not included.
+     */
+    public static Map<String, String> extractImageUrls(String html) {
+        return fetchImages(findImageUrls(html));
+    }
+
+    private static Map<String, String> fetchImages(Set<String> urls) {
+        Map<String, Fetch> fetches = new LinkedHashMap<>();
+        for (String url : urls) {
+            Fetch fetch = new Fetch(System.currentTimeMillis());
+            fetch.future = fetchExecutor.submit(() -> fetch(url, fetch));
+            fetches.put(url, fetch);
+        }
+
+        long limit = totalTimeout;
+        long deadline = limit > 0 ? System.currentTimeMillis() + limit : 0;
+        Map<String, String> imageUrls = new LinkedHashMap<>();
+        for (Map.Entry<String, Fetch> fetch : fetches.entrySet()) {
+            String url = fetch.getKey();
+            try {
+                imageUrls.put(url, toSource(fetch.getValue().await(deadline)));
+            } catch (TimeoutException e) {
+                fetch.getValue().future.cancel(true);
+                logger.warn(String.format("Timeout downloading image [%s], original URL is kept", url));
+            } catch (ExecutionException e) {
+                logger.warn(String.format("Can not download image [%s], original URL is kept", url), e.getCause());
+            } catch (IOException e) {
+                logger.warn(String.format("Can not store image [%s], original URL is kept", url), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return imageUrls;
+    }
+
+    private static String toSource(RemoteImage image) throws IOException {
+        LocalImageStore store = localImageStore;
+        File file = store != null ? store.getFile(image) : null;
+        if (file == null) {
+            return image.toDataUrl();
+        }
+        return "file://" + file.getAbsolutePath();
+    }
+
+    private static RemoteImage fetch(String url, Fetch fetch) throws Exception {
+        Semaphore permits = hostPermits.computeIfAbsent(host(url), h -> new Semaphore(MAX_FETCHES_PER_HOST));
+        permits.acquire();
+        fetch.startedAt = System.currentTimeMillis();
+        try {
+            return ImageCache.getInstance().get(url);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static String host(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    static Set<String> findImageUrls(String html) {
+        Set<String> urls = new LinkedHashSet<>();
+        Document document = Jsoup.parse(html);
+        for (Element imgElement : document.select("img[src]")) {
+            String url = imgElement.attr("src");
+            if (StringUtils.isNotBlank(url) && !url.startsWith("data:")) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Download of an image, whose timeout starts when the download does.
+     */
+    private static class Fetch {
+
+        private final long submittedAt;
+        private volatile Future<RemoteImage> future;
+        private volatile long startedAt;
+
+        private Fetch(long submittedAt) {
+            this.submittedAt = submittedAt;
+        }
+
+        /**
+         * Waits for the image until its own timeout or the deadline of the document.
+         *
+         * @param deadline time limit of the document, or 0 for no limit
+         */
+        private RemoteImage await(long deadline) throws InterruptedException, ExecutionException, TimeoutException {
+            long timeout = fetchTimeout;
+            while (true) {
+                if (future.isDone()) {
+                    return future.get();
+                }
+                long now = System.currentTimeMillis();
+                // downloads waiting for a thread or a host permit can wait one timeout since they were submitted
+                long wait = (startedAt > 0 ? startedAt : submittedAt) + timeout - now;
+                if (deadline > 0) {
+                    wait = Math.min(wait, deadline - now);
+                }
+                if (wait <= 0) {
+                    throw new TimeoutException();
+                }
+                try {
+                    return future.get(wait, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // checked again, as the download may have started while waiting
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.utils.Strings;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Private temporary directory of a job.
+ * <p>
+ * Every temporary file of a job is created inside its workspace, and the whole directory is removed
+ * when the job ends, so cleanup does not depend on the number of files in the temporary folder and
+ * jobs never delete files of other jobs. The root folder can point to a tmpfs mount.
+ */
+public class JobWorkspace implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(JobWorkspace.class);
+
+    private static final String PREFIX = "pdf-job-";
+
+    private static volatile File root = new File(System.getProperty("java.io.tmpdir"));
+
+    private static final Set<JobWorkspace> active = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong totalBytes = new AtomicLong();
+    private static final AtomicLong peakBytes = new AtomicLong();
+
+    private final File directory;
+    private boolean closed;
+    private long peak;
+
+    private JobWorkspace(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the folder where workspaces are created and removes workspaces left by previous executions.
+     *
+     * @param directory root folder, for example a tmpfs mount
+     */
+    public static void configure(File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn(String.format("Workspaces folder [%s] can not be created, using [%s]", directory, root));
+            return;
+        }
+        root = directory;
+        File[] stale = directory.listFiles((dir, name) -> name.startsWith(PREFIX));
+        if (stale != null) {
+            for (File dir : stale) {
+                FileUtils.deleteQuietly(dir);
+            }
+        }
+        logger.info(String.format("Job workspaces are created in [%s]", directory));
+    }
+
+    /**
+     * Folder where workspaces are created.
+     */
+    public static File getRoot() {
+        return root;
+    }
+
+    public static JobWorkspace create(String name) throws IOException {
+        File directory = new File(root, PREFIX + name + "-" + Strings.randomUUIDString());
+        if (!directory.mkdirs()) {
+            throw new IOException(String.format("Workspace [%s] can not be created", directory));
+        }
+        JobWorkspace workspace = new JobWorkspace(directory);
+        active.add(workspace);
+        return workspace;
+    }
+
+    /**
+     * Creates an empty file in the workspace. The size of the workspace is sampled first, so the peak
+     * includes files written earlier in the job and removed before it ends.
+     */
+    public File createFile(String prefix, String suffix) throws IOException {
+        samplePeak();
+        return File.createTempFile(prefix.length() < 3 ? prefix + "---" : prefix, suffix, directory);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getSize() {
+        return directory.isDirectory() ? FileUtils.sizeOfDirectory(directory) : 0;
+    }
+
+    private synchronized long samplePeak() {
+        if (closed) {
+            return 0;
+        }
+        long size = getSize();
+        peak = Math.max(peak, size);
+        return size;
+    }
+
+    /**
+     * Removes the workspace with all its files.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        long size = samplePeak();
+        closed = true;
+        totalBytes.addAndGet(size);
+        peakBytes.accumulateAndGet(peak, Math::max);
+        active.remove(this);
+        try {
+            FileUtils.deleteDirectory(directory);
+        } catch (IOException e) {
+            logger.warn(String.format("Can not remove workspace [%s]", directory), e);
+        }
+    }
+
+    /**
+     * Removes workspaces of the root folder older than the given age that do not belong to a job in
+     * progress, like the ones that could not be removed when their job ended. Other files of the
+     * folder are never touched, as it can be shared with other processes.
+     *
+     * @param maxAge age in milliseconds
+     */
+    public static void removeStaleWorkspaces(long maxAge) {
+        long limit = System.currentTimeMillis() - maxAge;
+        Set<File> inUse = new HashSet<>();
+        for (JobWorkspace workspace : active) {
+            inUse.add(workspace.directory);
+        }
+        File folder = root;
+        File[] directories = folder.listFiles((dir, name) -> name.startsWith(PREFIX));
+        if (directories == null) {
+            return;
+        }
+        int removed = 0;
+        for (File directory : directories) {
+            if (directory.isDirectory() && directory.lastModified() < limit && !inUse.contains(directory)) {
+                FileUtils.deleteQuietly(directory);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            logger.info(String.format("Removed [%s] stale workspaces from [%s]", removed, folder));
+        }
+    }
+
+    /**
+     * Disk used right now by all open workspaces.
+     */
+    public static long getDiskUsage() {
+        long usage = 0;
+        for (JobWorkspace workspace : active) {
+            usage += workspace.samplePeak();
+        }
+        return usage;
+    }
+
+    public static int getActiveWorkspaces() {
+        return active.size();
+    }
+
+    public static long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Largest disk usage of a single job, sampled when its files are created, when the disk usage is
+     * checked and when the job ends.
+     */
+    public static long getPeakBytes() {
+        return peakBytes.get();
+    }
+}
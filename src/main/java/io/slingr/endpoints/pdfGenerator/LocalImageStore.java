@@ -0,0 +1,159 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content addressed directory with the downloaded images, so the renderer can read them as local
+ * files instead of base64 data URLs embedded in the HTML.
+ * <p>
+ * Each distinct image is written once, named by the SHA-256 of its content. When the directory
+ * grows over its limit the least recently used files are removed, but only if they were not used
+ * during the grace period, so files referenced by documents being rendered are kept. If there is
+ * still no room for a new image it is not stored and the caller embeds it instead.
+ */
+public class LocalImageStore {
+
+    private static Logger logger = LoggerFactory.getLogger(LocalImageStore.class);
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final long GRACE_PERIOD = 10L * 60 * 1000;
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, StoredImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public LocalImageStore(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn(String.format("Images directory [%s] can not be created", directory));
+        }
+    }
+
+    /**
+     * Returns the local file for the image, writing it only if it is not already stored.
+     *
+     * @param image the downloaded image
+     * @return the local file with the image content, or null if the store is full of images that are
+     * still in their grace period
+     * @throws IOException if the image can not be written
+     */
+    public File getFile(RemoteImage image) throws IOException {
+        String name = image.getHash() + extension(image.getContentType());
+        long size = image.getContent().length;
+        List<File> toDelete = new ArrayList<>();
+        try {
+            synchronized (this) {
+                StoredImage stored = images.get(name);
+                if (stored != null) {
+                    stored.lastUsed = System.currentTimeMillis();
+                    return stored.file;
+                }
+                evict(size, toDelete);
+                if (totalBytes + size > maxBytes) {
+                    logger.debug(String.format("Images directory [%s] is full, image [%s] is not stored", directory, name));
+                    return null;
+                }
+            }
+        } finally {
+            deleteFiles(toDelete);
+        }
+        File file = new File(directory, name);
+        if (!file.exists()) {
+            File tmp = new File(directory, name + ".part-" + Thread.currentThread().getId());
+            FileUtils.writeByteArrayToFile(tmp, image.getContent());
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        synchronized (this) {
+            StoredImage stored = images.get(name);
+            if (stored == null) {
+                images.put(name, new StoredImage(file, size));
+                totalBytes += size;
+            } else {
+                stored.lastUsed = System.currentTimeMillis();
+            }
+            // images written at the same time by other threads can take the store over its limit
+            evict(0, toDelete);
+        }
+        deleteFiles(toDelete);
+        return file;
+    }
+
+    /**
+     * Removes the least recently used images out of their grace period until there is room for the
+     * given bytes. Images in their grace period are skipped.
+     */
+    private void evict(long room, List<File> toDelete) {
+        long now = System.currentTimeMillis();
+        Iterator<StoredImage> it = images.values().iterator();
+        while (totalBytes + room > maxBytes && it.hasNext()) {
+            StoredImage eldest = it.next();
+            if (now - eldest.lastUsed < GRACE_PERIOD) {
+                continue;
+            }
+            totalBytes -= eldest.size;
+            toDelete.add(eldest.file);
+            it.remove();
+        }
+    }
+
+    private static void deleteFiles(List<File> files) {
+        for (File f : files) {
+            FileUtils.deleteQuietly(f);
+        }
+        files.clear();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    static String extension(String contentType) {
+        switch (contentType) {
+            case "image/png":
+                return ".png";
+            case "image/jpeg":
+                return ".jpg";
+            case "image/gif":
+                return ".gif";
+            case "image/webp":
+                return ".webp";
+            case "image/bmp":
+                return ".bmp";
+            case "image/tiff":
+                return ".tiff";
+            case "image/x-icon":
+                return ".ico";
+            case "image/svg+xml":
+                return ".svg";
+            default:
+                return ".img";
+        }
+    }
+
+    private static class StoredImage {
+
+        private final File file;
+        private final long size;
+        private long lastUsed;
+
+        private StoredImage(File file, long size) {
+            this.file = file;
+            this.size = size;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.utils.Json;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms and counters of each endpoint function.
+ * <p>
+ * Every function records the time spent in each stage of its jobs, like waiting in the queue,
+ * downloading files, processing templates, rendering, uploading and sending the response event, so
+ * the endpoint can be sized from data. Histograms use fixed buckets, so recording a value does not
+ * allocate and percentiles are approximated by the upper bound of their bucket.
+ */
+public class Metrics {
+
+    public static final String QUEUE = "queue";
+    public static final String DOWNLOAD = "download";
+    public static final String TEMPLATE = "template";
+    public static final String RENDER = "render";
+    public static final String UPLOAD = "upload";
+    public static final String EVENT = "event";
+    public static final String TOTAL = "total";
+
+    private static final Metrics instance = new Metrics();
+
+    private final long startedAt = System.currentTimeMillis();
+    private final Map<String, FunctionMetrics> functions = new ConcurrentHashMap<>();
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    public void record(String function, String stage, long millis) {
+        function(function).histogram(stage).record(millis);
+    }
+
+    /**
+     * Starts measuring a stage, that is recorded when the returned timer is closed.
+     */
+    public Timer time(String function, String stage) {
+        return new Timer(function, stage);
+    }
+
+    public void request(String function) {
+        function(function).requests.incrementAndGet();
+    }
+
+    public void error(String function) {
+        function(function).errors.incrementAndGet();
+    }
+
+    /**
+     * Counts the response of a job as an error if its status is {@code error}.
+     */
+    public void response(String function, Json response) {
+        if (response != null && "error".equals(response.string("status"))) {
+            error(function);
+        }
+    }
+
+    private FunctionMetrics function(String function) {
+        return functions.computeIfAbsent(function, name -> new FunctionMetrics());
+    }
+
+    public Json getStats() {
+        Json stats = Json.map();
+        long uptime = Math.max(1, System.currentTimeMillis() - startedAt);
+        for (Map.Entry<String, FunctionMetrics> entry : new TreeMap<>(functions).entrySet()) {
+            FunctionMetrics metrics = entry.getValue();
+            long requests = metrics.requests.get();
+            Json stages = Json.map();
+            for (Map.Entry<String, Histogram> stage : new TreeMap<>(metrics.stages).entrySet()) {
+                stages.set(stage.getKey(), stage.getValue().getStats());
+            }
+            stats.set(entry.getKey(), Json.map()
+                    .set("requests", requests)
+                    .set("errors", metrics.errors.get())
+                    .set("requestsPerMinute", requests * 60000d / uptime)
+                    .set("latency", stages));
+        }
+        return stats;
+    }
+
+    /**
+     * One line per function with the requests, errors and total latency percentiles, for logs.
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, FunctionMetrics> entry : new TreeMap<>(functions).entrySet()) {
+            FunctionMetrics metrics = entry.getValue();
+            Histogram total = metrics.stages.get(TOTAL);
+            sb.append(String.format("[%s] requests [%s] errors [%s]", entry.getKey(), metrics.requests.get(), metrics.errors.get()));
+            if (total != null) {
+                sb.append(String.format(" total p50 [%s] ms p95 [%s] ms p99 [%s] ms",
+                        total.percentile(0.5), total.percentile(0.95), total.percentile(0.99)));
+            }
+            sb.append("; ");
+        }
+        return sb.toString();
+    }
+
+    private static class FunctionMetrics {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final Map<String, Histogram> stages = new ConcurrentHashMap<>();
+
+        private Histogram histogram(String stage) {
+            return stages.computeIfAbsent(stage, name -> new Histogram());
+        }
+    }
+
+    static class Histogram {
+
+        private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000,
+                10000, 20000, 50000, 100000, 200000, 500000};
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long millis) {
+            int bucket = 0;
+            while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(millis);
+            max.accumulateAndGet(millis, Math::max);
+        }
+
+        long percentile(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * percentile);
+            long accumulated = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                accumulated += buckets.get(i);
+                if (accumulated >= target) {
+                    return Math.min(BOUNDS[i], max.get());
+                }
+            }
+            return max.get();
+        }
+
+        Json getStats() {
+            long total = count.get();
+            return Json.map()
+                    .set("count", total)
+                    .set("mean", total > 0 ? sum.get() / total : 0)
+                    .set("p50", percentile(0.5))
+                    .set("p95", percentile(0.95))
+                    .set("p99", percentile(0.99))
+                    .set("max", max.get());
+        }
+    }
+
+    /**
+     * Measures a stage from its creation until it is closed.
+     */
+    public class Timer implements Closeable {
+
+        private final String function;
+        private final String stage;
+        private final long start = System.nanoTime();
+
+        private Timer(String function, String stage) {
+            this.function = function;
+            this.stage = stage;
+        }
+
+        @Override
+        public void close() {
+            record(function, stage, (System.nanoTime() - start) / 1000000);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the payloads of queued jobs on disk, so the render queue only holds small descriptors and
+ * the backlog is limited by disk instead of heap.
+ * <p>
+ * Payloads larger than the threshold are appended to segment files in a workspace of the spool and
+ * read back when a worker takes the job. When a segment reaches its maximum size, or all its payloads
+ * were already released, a new one is started, and the previous segment is removed as soon as all its
+ * payloads were released. Smaller payloads are kept in memory, because writing them costs more
+ * than they take.
+ */
+public class PayloadSpool {
+
+    private static Logger logger = LoggerFactory.getLogger(PayloadSpool.class);
+
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static volatile PayloadSpool instance = new PayloadSpool(DEFAULT_THRESHOLD, DEFAULT_SEGMENT_SIZE);
+
+    private final int threshold;
+    private final long segmentSize;
+    private JobWorkspace workspace;
+    private Segment current;
+    private int segments;
+
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicLong diskUsage = new AtomicLong();
+
+    PayloadSpool(int threshold, long segmentSize) {
+        this.threshold = threshold;
+        this.segmentSize = segmentSize;
+    }
+
+    public static PayloadSpool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replaces the shared spool.
+     *
+     * @param threshold   payloads with at least this number of characters are written to disk, a negative value keeps
+     *                    all of them in memory
+     * @param segmentSize bytes of a segment file before a new one is started
+     */
+    public static void configure(int threshold, long segmentSize) {
+        instance = new PayloadSpool(threshold, segmentSize);
+        if (threshold >= 0) {
+            logger.info(String.format("Queued payloads larger than [%s] characters are written to disk", threshold));
+        }
+    }
+
+    /**
+     * Stores a payload until the job that needs it runs.
+     *
+     * @param payload content of the job, like the HTML of a document
+     * @return the stored payload, that must be closed when it is not needed anymore
+     * @throws IOException if the payload can not be written
+     */
+    public Payload store(String payload) throws IOException {
+        if (threshold < 0 || payload.length() < threshold) {
+            return new Payload(payload, null, 0, 0);
+        }
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        Segment segment;
+        long offset;
+        synchronized (this) {
+            // a segment whose payloads were all released is replaced too, so it is removed without waiting to fill it
+            if (current == null || (current.size > 0 && (current.size + bytes.length > segmentSize || current.isUnused()))) {
+                rotate();
+            }
+            segment = current;
+            offset = segment.append(bytes);
+        }
+        spilled.incrementAndGet();
+        spilledBytes.addAndGet(bytes.length);
+        diskUsage.addAndGet(bytes.length);
+        return new Payload(null, segment, offset, bytes.length);
+    }
+
+    private void rotate() throws IOException {
+        if (workspace == null) {
+            workspace = JobWorkspace.create("spool");
+        }
+        if (current != null) {
+            current.seal();
+        }
+        current = new Segment(new File(workspace.getDirectory(), String.format("segment-%06d.dat", ++segments)));
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * Bytes of the segment files not removed yet.
+     */
+    public long getDiskUsage() {
+        return diskUsage.get();
+    }
+
+    private class Segment {
+
+        private final File file;
+        private OutputStream out;
+        private long size;
+        private int live;
+        private boolean sealed;
+
+        private Segment(File file) throws IOException {
+            this.file = file;
+            this.out = new FileOutputStream(file, true);
+        }
+
+        private synchronized long append(byte[] bytes) throws IOException {
+            long offset = size;
+            out.write(bytes);
+            size += bytes.length;
+            live++;
+            return offset;
+        }
+
+        private String read(long offset, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                in.seek(offset);
+                in.readFully(bytes);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private synchronized boolean isUnused() {
+            return live == 0;
+        }
+
+        private synchronized void release() {
+            live--;
+            removeIfUnused();
+        }
+
+        private synchronized void seal() {
+            sealed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.debug(String.format("Can not close segment [%s]", file), e);
+            }
+            removeIfUnused();
+        }
+
+        private void removeIfUnused() {
+            if (sealed && live == 0 && file.exists()) {
+                diskUsage.addAndGet(-size);
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    /**
+     * Payload of a queued job, kept in memory or in a segment file. It can be read more than once
+     * until it is closed.
+     */
+    public class Payload implements Closeable {
+
+        private final String value;
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private boolean closed;
+
+        private Payload(String value, Segment segment, long offset, int length) {
+            this.value = value;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String read() throws IOException {
+            if (segment == null) {
+                return value;
+            }
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("Payload was already released");
+                }
+            }
+            return segment.read(offset, length);
+        }
+
+        /**
+         * Bytes the payload takes in the heap while it is queued.
+         */
+        public long getMemorySize() {
+            return value != null ? value.length() * 2L : 0;
+        }
+
+        public boolean isSpilled() {
+            return segment != null;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (segment != null) {
+                segment.release();
+            }
+        }
+    }
+}
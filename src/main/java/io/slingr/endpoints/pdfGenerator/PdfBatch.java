@@ -0,0 +1,277 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.services.Events;
+import io.slingr.endpoints.services.Files;
+import io.slingr.endpoints.utils.Json;
+import io.slingr.endpoints.ws.exchange.FunctionRequest;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates one document per data record using the same template and settings.
+ * <p>
+ * Each record is rendered as a separate task of the {@link RenderScheduler}, so records are
+ * rendered in parallel and the template is compiled only once by the {@link TemplateCache}. In
+ * the default mode every record is uploaded as soon as it is rendered and reported with a
+ * {@code pdfBatchRecord} event. When {@code combine} is set, records are kept in the batch
+ * workspace and merged in their original order into a single document. In both cases a final
+ * {@code pdfResponse} event is sent when all records are done, and then the admission ticket of
+ * the batch is released. Uploads are handed off to the {@link UploadStage}, so render workers do not
+ * wait for the file service.
+ */
+public class PdfBatch {
+
+    private static Logger logger = LoggerFactory.getLogger(PdfBatch.class);
+
+    public static final String RECORD_EVENT = "pdfBatchRecord";
+
+    private static final String FUNCTION = "generatePdfBatch";
+
+    private final Events events;
+    private final Files files;
+    private final FunctionRequest request;
+    private final String template;
+    private final Json settings;
+    private final List<Json> records;
+    private final boolean combine;
+    private final boolean downloadImages;
+    private final AdmissionControl.Ticket ticket;
+    private final JobWorkspace workspace;
+    private final File[] recordFiles;
+    private final Json[] results;
+    private final AtomicInteger pending;
+    private final AtomicInteger failed = new AtomicInteger();
+    private final long createdAt = System.currentTimeMillis();
+
+    public PdfBatch(Events events, Files files, FunctionRequest request, String template, Json settings,
+                    List<Json> records, boolean combine, boolean downloadImages, AdmissionControl.Ticket ticket) throws IOException {
+        this.events = events;
+        this.files = files;
+        this.request = request;
+        this.template = template;
+        this.settings = settings != null ? settings : Json.map();
+        this.records = records;
+        this.combine = combine;
+        this.downloadImages = downloadImages;
+        this.ticket = ticket;
+        this.workspace = combine ? JobWorkspace.create("batch") : null;
+        this.recordFiles = new File[records.size()];
+        this.results = new Json[records.size()];
+        this.pending = new AtomicInteger(records.size());
+    }
+
+    public void submitTo(RenderScheduler scheduler) {
+        logger.info(String.format("Submitting batch of [%s] records", records.size()));
+        for (int i = 0; i < records.size(); i++) {
+            final int index = i;
+            long queuedAt = System.currentTimeMillis();
+            scheduler.submit(() -> {
+                Metrics.getInstance().record(FUNCTION, Metrics.QUEUE, System.currentTimeMillis() - queuedAt);
+                renderRecord(index);
+            });
+        }
+    }
+
+    private void renderRecord(int index) {
+        Json result = Json.map();
+        result.set("index", index);
+        JobWorkspace recordWorkspace = null;
+        try {
+            recordWorkspace = JobWorkspace.create("batch-record");
+            Json data = records.get(index);
+            String html;
+            try (Metrics.Timer timer = Metrics.getInstance().time(FUNCTION, Metrics.TEMPLATE)) {
+                html = TemplateCache.getInstance().process(template, data != null ? data.toMap() : Json.map().toMap());
+            }
+            if (downloadImages) {
+                try (Metrics.Timer timer = Metrics.getInstance().time(FUNCTION, Metrics.DOWNLOAD)) {
+                    html = ImageInliner.inline(html);
+                }
+            }
+            if (combine) {
+                renderToFile(index, html, recordWorkspace);
+            } else {
+                Json cachedFile = cachedFile(html);
+                if (cachedFile == null) {
+                    CompletableFuture<Json> upload = renderAndUpload(index, html, recordWorkspace);
+                    // the record is completed by the upload stage, so this worker can render the next one
+                    JobWorkspace uploadWorkspace = recordWorkspace;
+                    recordWorkspace = null;
+                    upload.whenComplete((fileJson, ex) -> {
+                        uploadWorkspace.close();
+                        if (ex != null) {
+                            completeRecord(index, failedRecord(index, ex instanceof CompletionException ? ex.getCause() : ex));
+                        } else {
+                            completeRecord(index, Json.map().set("index", index).set("file", fileJson).set("status", "ok"));
+                        }
+                    });
+                    return;
+                }
+                result.set("file", cachedFile);
+            }
+            result.set("status", "ok");
+        } catch (Exception ex) {
+            result = failedRecord(index, ex);
+        } finally {
+            if (recordWorkspace != null) {
+                recordWorkspace.close();
+            }
+        }
+        completeRecord(index, result);
+    }
+
+    private Json failedRecord(int index, Throwable ex) {
+        failed.incrementAndGet();
+        Json result;
+        int timeoutIndex = ExceptionUtils.indexOfType(ex, RenderTimeoutException.class);
+        if (timeoutIndex >= 0) {
+            logger.warn(String.format("PDF render timed out for batch record [%s]", index));
+            result = ((RenderTimeoutException) ExceptionUtils.getThrowables(ex)[timeoutIndex]).toResponse();
+        } else {
+            logger.info(String.format("Failed to generate PDF for batch record [%s]", index), ex);
+            result = Json.map();
+            result.set("status", "error");
+            result.set("message", EndpointException.json(ErrorCode.GENERAL, "Failed to generate PDF: " + ex.getMessage(), ex));
+        }
+        result.set("index", index);
+        return result;
+    }
+
+    private void completeRecord(int index, Json result) {
+        results[index] = result;
+        if (!combine) {
+            try (Metrics.Timer timer = Metrics.getInstance().time(FUNCTION, Metrics.EVENT)) {
+                events.send(RECORD_EVENT, result, request.getFunctionId());
+            }
+        }
+        if (pending.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    private String cacheKey(String html) {
+        return ResultCache.key(html, settings, PdfEngine.getRenderEngine(settings).getVersion());
+    }
+
+    private Json cachedFile(String html) {
+        ResultCache resultCache = ResultCache.getInstance();
+        return resultCache != null ? resultCache.get(cacheKey(html)) : null;
+    }
+
+    /**
+     * Renders the record to a file and hands it off to the {@link UploadStage}.
+     *
+     * @return the pending upload
+     */
+    private CompletableFuture<Json> renderAndUpload(int index, String html, JobWorkspace recordWorkspace) throws Exception {
+        ResultCache resultCache = ResultCache.getInstance();
+        String cacheKey = resultCache != null ? cacheKey(html) : null;
+        PdfEngine pdfEngine = new PdfEngine(html, settings, downloadImages, recordWorkspace);
+        File target = recordWorkspace.createFile("batch-record-", ".pdf");
+        try (Metrics.Timer timer = Metrics.getInstance().time(FUNCTION, Metrics.RENDER);
+             InputStream is = pdfEngine.getPDF()) {
+            if (is == null) {
+                throw new IOException("PDF file was not generated.");
+            }
+            FileUtils.copyInputStreamToFile(is, target);
+        }
+        String uploadCacheKey = cacheKey;
+        Metrics.Timer uploadTimer = Metrics.getInstance().time(FUNCTION, Metrics.UPLOAD);
+        return UploadStage.getInstance().upload(files, pdfEngine.getFileName() + "-" + (index + 1), target, "application/pdf")
+                .whenComplete((fileJson, ex) -> uploadTimer.close())
+                .thenApply(fileJson -> {
+                    if (resultCache != null) {
+                        resultCache.put(uploadCacheKey, fileJson);
+                    }
+                    return fileJson;
+                });
+    }
+
+    private void renderToFile(int index, String html, JobWorkspace recordWorkspace) throws Exception {
+        PdfEngine pdfEngine = new PdfEngine(html, settings, downloadImages, recordWorkspace);
+        try (Metrics.Timer timer = Metrics.getInstance().time(FUNCTION, Metrics.RENDER);
+             InputStream is = pdfEngine.getPDF()) {
+            if (is == null) {
+                throw new IOException("PDF file was not generated.");
+            }
+            File target = workspace.createFile("batch-record-" + index + "-", ".pdf");
+            FileUtils.copyInputStreamToFile(is, target);
+            recordFiles[index] = target;
+        }
+    }
+
+    private void complete() {
+        Json res = Json.map();
+        Json recordsJson = Json.list();
+        for (Json result : results) {
+            recordsJson.push(result);
+        }
+        try {
+            if (combine) {
+                res.set("file", merge());
+            }
+            if (failed.get() == 0) {
+                res.set("status", "ok");
+            } else {
+                res.set("status", "error");
+                res.set("message", EndpointException.json(ErrorCode.GENERAL,
+                        String.format("PDF could not be generated for %s of %s records.", failed.get(), records.size())));
+            }
+        } catch (Exception ex) {
+            logger.info("Failed to combine batch documents", ex);
+            res.set("status", "error");
+            res.set("message", EndpointException.json(ErrorCode.GENERAL, "Failed to combine documents: " + ex.getMessage(), ex));
+        } finally {
+            if (workspace != null) {
+                workspace.close();
+            }
+            if (ticket != null) {
+                ticket.close();
+            }
+        }
+        res.set("records", recordsJson);
+        logger.info(String.format("Batch of [%s] records done, [%s] failed. Sending [pdfResponse] event to the app", records.size(), failed.get()));
+        Metrics metrics = Metrics.getInstance();
+        metrics.response(FUNCTION, res);
+        try (Metrics.Timer timer = metrics.time(FUNCTION, Metrics.EVENT)) {
+            events.send("pdfResponse", res, request.getFunctionId());
+        }
+        metrics.record(FUNCTION, Metrics.TOTAL, System.currentTimeMillis() - createdAt);
+    }
+
+    private Json merge() throws IOException {
+        PDFMergerUtility merger = new PDFMergerUtility();
+        int sources = 0;
+        for (File recordFile : recordFiles) {
+            if (recordFile != null) {
+                merger.addSource(recordFile);
+                sources++;
+            }
+        }
+        if (sources == 0) {
+            return null;
+        }
+        File merged = workspace.createFile("batch-", ".pdf");
+        merger.setDestinationFileName(merged.getAbsolutePath());
+        merger.mergeDocuments(MemoryUsageSetting.setupTempFileOnly().setTempDir(workspace.getDirectory()));
+        String fileName = settings.string("name");
+        try (Metrics.Timer timer = Metrics.getInstance().time(FUNCTION, Metrics.UPLOAD)) {
+            return UploadStage.getInstance().uploadAndWait(files, StringUtils.isNotBlank(fileName) ? fileName : merged.getName(), merged, "application/pdf");
+        }
+    }
+}
@@ -1,11 +1,9 @@
 package io.slingr.endpoints.pdfGenerator;
 
-import freemarker.template.Configuration;
-import freemarker.template.Template;
 import freemarker.template.TemplateException;
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
 import io.slingr.endpoints.utils.Json;
-import io.slingr.endpoints.utils.Strings;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,73 +13,44 @@ import java.util.*;
 
 public class PdfEngine {
 
+    public static final String WKHTMLTOPDF = "/usr/bin/wkhtmltopdf";
+
+    private static final Map<String, RenderEngine> engines = new HashMap<>();
+
+    static {
+        register(new WkhtmltopdfEngine());
+        register(new FlyingSaucerEngine());
+    }
+
+    private static volatile String defaultEngine = WkhtmltopdfEngine.NAME;
+
     private Logger logger = LoggerFactory.getLogger(PdfEngine.class);
 
     private String template;
-    List<String> commandParams;
-    private String sourceTmpFile;
-    private String targetTmpFile;
+    private Json settings;
+    private String headerHtml;
+    private String footerHtml;
     private String fileName;
+    private boolean downloadImages;
+    private long timeout;
+    private JobWorkspace workspace;
+    private RenderEngine engine;
 
-    private String headerTmpFile;
-    private String footerTmpFile;
-
-    private final String TMP_PATH = "/tmp";
-    public static boolean downloadImages;
-
-    public PdfEngine(String tpl, Json settings, boolean downloadImages) throws IOException, TemplateException {
+    public PdfEngine(String tpl, Json settings, boolean downloadImages, JobWorkspace workspace) throws IOException, TemplateException {
 
         template = tpl;
-        commandParams = new ArrayList();
-        commandParams.add("/usr/bin/wkhtmltopdf");
+        this.workspace = workspace;
+        this.downloadImages = downloadImages;
 
         if (settings == null) {
             settings = Json.map();
         }
+        this.settings = settings;
+        this.engine = getRenderEngine(settings);
+        this.timeout = getTimeout(settings);
 
-        this.headerTmpFile = this.addFileCommandParams(commandParams, settings.string("headerTemplate"), settings.json("headerData"), "--header-html");
-        this.footerTmpFile = this.addFileCommandParams(commandParams, settings.string("footerTemplate"), settings.json("footerData"), "--footer-html");
-
-        String pageSize = settings.string("pageSize");
-        if (StringUtils.isBlank(pageSize)) {
-            pageSize = "A4";
-        }
-        commandParams.add("--page-size");
-        commandParams.add(pageSize);
-
-        if (downloadImages){
-            commandParams.add("--enable-local-file-access");
-        }
-
-        String orientation = settings.string("orientation");
-        if (StringUtils.isNotBlank(orientation) && orientation.toLowerCase().equals("landscape")) {
-            commandParams.add("--orientation");
-            commandParams.add("Landscape");
-        }
-
-        Integer marginBottom = settings.integer("marginBottom");
-        if (marginBottom != null) {
-            commandParams.add("--margin-bottom");
-            commandParams.add(Integer.toString(marginBottom));
-        }
-
-        Integer marginLeft = settings.integer("marginLeft");
-        if (marginLeft != null) {
-            commandParams.add("--margin-left");
-            commandParams.add(Integer.toString(marginLeft));
-        }
-
-        Integer marginRight = settings.integer("marginRight");
-        if (marginRight != null) {
-            commandParams.add("--margin-right");
-            commandParams.add(Integer.toString(marginRight));
-        }
-
-        Integer marginTop = settings.integer("marginTop");
-        if (marginTop != null) {
-            commandParams.add("--margin-top");
-            commandParams.add(Integer.toString(marginTop));
-        }
+        this.headerHtml = this.processTemplate(settings.string("headerTemplate"), settings.json("headerData"));
+        this.footerHtml = this.processTemplate(settings.string("footerTemplate"), settings.json("footerData"));
 
         String fn = settings.string("name");
         if (StringUtils.isBlank(fn)) {
@@ -91,94 +60,80 @@ public class PdfEngine {
         }
     }
 
-    private String addFileCommandParams(List<String> commandParams, String template, Json data, String command) throws IOException, TemplateException {
-
-        String path = null;
-
-        if (StringUtils.isNotBlank(template)) {
-
-            Configuration cfg = new Configuration();
-
-            if (data != null) {
-                Template tpl = new Template("name", new StringReader(template), cfg);
-                tpl.setAutoFlush(true);
-                StringWriter sw = new StringWriter();
-                tpl.process(data.toMap(), sw);
-
-                template = sw.toString();
-                if (downloadImages) {
-                    Map<String, String> urlImgs = PdfGenerator.extractImageUrlsFromHtml(template);
-                    for (Map.Entry<String, String> entry : urlImgs.entrySet()) {
-                        template = template.replace(entry.getKey(), entry.getValue());
-                    }
-                    logger.info(String.format("Template [%s]", template));
-                }
+    private static void register(RenderEngine engine) {
+        engines.put(engine.getName().toLowerCase(), engine);
+    }
 
-                File temp = File.createTempFile("pdf-header-" + Strings.randomUUIDString(), ".html");
-                FileUtils.writeStringToFile(temp, template, "UTF-8");
+    /**
+     * Sets the engine used by documents that do not have the {@code engine} setting.
+     *
+     * @param name name of the engine
+     */
+    public static void setDefaultEngine(String name) {
+        defaultEngine = getRenderEngine(name).getName();
+    }
 
-                path = temp.getAbsolutePath();
-                commandParams.add(command);
-                commandParams.add(path);
-            }
+    public static RenderEngine getRenderEngine(String name) {
+        RenderEngine engine = engines.get(StringUtils.defaultIfBlank(name, defaultEngine).toLowerCase());
+        if (engine == null) {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Unknown render engine [%s].", name));
+        }
+        return engine;
+    }
 
+    /**
+     * Engine for a document, from its {@code engine} setting or the default one.
+     */
+    public static RenderEngine getRenderEngine(Json settings) {
+        return getRenderEngine(settings != null ? settings.string("engine") : null);
+    }
 
+    /**
+     * Render deadline of a document, from its {@code timeout} setting in seconds or the default one.
+     */
+    public static long getTimeout(Json settings) {
+        Integer seconds = settings != null ? settings.integer("timeout") : null;
+        if (seconds != null && seconds > 0) {
+            return seconds * 1000L;
         }
+        return ProcessWatchdog.getDefaultTimeout();
+    }
 
-        return path;
+    private String processTemplate(String template, Json data) throws IOException, TemplateException {
+        if (StringUtils.isBlank(template) || data == null) {
+            return null;
+        }
+        template = TemplateCache.getInstance().process(template, data.toMap());
+        if (downloadImages) {
+            template = ImageInliner.inline(template);
+            logger.debug(String.format("Template with images inlined has [%s] characters", template.length()));
+        }
+        return template;
     }
 
     public String getFileName() {
         return fileName;
     }
 
-    public InputStream getPDF() {
-        try {
-            File temp = File.createTempFile("pdf-wkhtmltopdf-" + Strings.randomUUIDString(), ".html");
-            FileUtils.writeStringToFile(temp, template, "UTF-8");
-            sourceTmpFile = temp.getAbsolutePath();
-            targetTmpFile = temp.getAbsolutePath().replaceAll("\\.html", ".pdf");
-            commandParams.add(sourceTmpFile);
-            commandParams.add(targetTmpFile);
-        } catch (IOException e) {
-            logger.error("Error creating pdf temporal files", e);
-            return null;
-        }
-        return PdfHeaderFooterHandler.openStream(commandParams, targetTmpFile);
+    public RenderEngine getEngine() {
+        return engine;
     }
 
-    public void cleanTmpFiles() {
-        /*if (sourceTmpFile != null) {
-            (new File(sourceTmpFile)).delete();
-        }
-        if (targetTmpFile != null) {
-            (new File(targetTmpFile)).delete();
-        }
-        if (headerTmpFile != null) {
-            (new File(headerTmpFile)).delete();
-        }
-        if (footerTmpFile != null) {
-            (new File(footerTmpFile)).delete();
-        }*/
-        File tmpFolder = new File(TMP_PATH);
-        if (tmpFolder.exists() && tmpFolder.isDirectory()) {
-            FilenameFilter filter = new FilenameFilter() {
-                @Override
-                public boolean accept(File dir, String name) {
-                    return name.endsWith(".tmp");
-                }
-            };
-            File[] tmpFiles = tmpFolder.listFiles(filter);
-            if (tmpFiles != null) {
-                for (File tmpFile : tmpFiles) {
-                    tmpFile.delete();
-                    logger.info("Deleted: " + tmpFile.getName());
-                }
-            }
-            logger.info(".tmp files deleted from the /tmp folder.");
-        } else {
-            logger.info("/tmp folder does not exist or is not a directory.");
+    /**
+     * Renders the document with the selected engine.
+     *
+     * @return the PDF content or null if it could not be generated
+     * @throws RenderTimeoutException if the document was not rendered before its deadline
+     */
+    public InputStream getPDF() throws RenderTimeoutException {
+        try {
+            return engine.render(new RenderJob(template, headerHtml, footerHtml, settings, downloadImages, timeout, workspace));
+        } catch (RenderTimeoutException e) {
+            throw e;
+        } catch (IOException e) {
+            logger.error(String.format("HTML can not be converted with [%s]", engine.getName()), e);
         }
+        return null;
     }
 
 }
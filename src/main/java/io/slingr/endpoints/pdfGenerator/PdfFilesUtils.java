@@ -3,8 +3,15 @@ package io.slingr.endpoints.pdfGenerator;
 
 import io.slingr.endpoints.utils.Json;
 import org.apache.commons.lang.StringUtils;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 
 public class PdfFilesUtils {
@@ -88,4 +95,35 @@ public class PdfFilesUtils {
         return fileName;
     }
 
+    /**
+     * Renders a page of a document as a JPEG image, as done by {@code convertPdfToImages}.
+     *
+     * @param renderer renderer of the document
+     * @param page     index of the page, starting at 0
+     * @param dpi      resolution of the image
+     * @param target   file where the image is written
+     */
+    public static void renderPageToJpeg(PDFRenderer renderer, int page, int dpi, File target) throws IOException {
+        BufferedImage bim = renderer.renderImageWithDPI(page, dpi, ImageType.RGB);
+        ImageIO.write(bim, "JPEG", target);
+    }
+
+    public static String sha256(String value) {
+        return sha256(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String sha256(byte[] value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
 }
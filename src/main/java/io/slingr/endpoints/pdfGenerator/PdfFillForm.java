@@ -21,7 +21,6 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,24 +31,45 @@ public class PdfFillForm {
     private Map<String, String> fonts;
     private AppLogs appLogger;
 
+    /**
+     * @param appLogger app logger, or null to write logs only to the endpoint log
+     */
     public PdfFillForm(AppLogs appLogger) {
         fonts = new HashMap<>();
         this.appLogger = appLogger;
     }
 
 
-    public File fillForm(Files files, String pdfFileId, Json settings) throws IOException {
-        appLogger.info(String.format("Filling up form [%s]", pdfFileId));
+    public File fillForm(Files files, JobWorkspace workspace, String pdfFileId, Json settings) throws IOException {
+        InputStream is;
+        try {
+            logInfo(String.format("Downloading form [%s]", pdfFileId));
+            is = files.download(pdfFileId).getFile();
+            logInfo(String.format("Done downloading form [%s]", pdfFileId));
+        } catch (Exception ex) {
+            logError(String.format("Can not download pdf file [%s]: " + ex.getMessage(), pdfFileId), ex);
+            return null;
+        }
+        return fillForm(is, files, workspace, pdfFileId, settings);
+    }
+
+    /**
+     * Fills the fields of a form already downloaded.
+     *
+     * @param is        the form, that is closed when done
+     * @param files     used to download the fonts set in the settings
+     * @param workspace workspace where the filled form is written
+     * @param pdfFileId id of the form, for logs
+     * @param settings  values and styles of the fields
+     * @return the filled form, or null if it could not be filled
+     */
+    public File fillForm(InputStream is, Files files, JobWorkspace workspace, String pdfFileId, Json settings) throws IOException {
+        logInfo(String.format("Filling up form [%s]", pdfFileId));
 
-        InputStream is = null;
         PdfDocument pdfDoc = null;
         File tmp = null;
         try {
-            appLogger.info(String.format("Downloading form [%s]", pdfFileId));
-            is = files.download(pdfFileId).getFile();
-            appLogger.info(String.format("Done downloading form [%s]", pdfFileId));
-
-            tmp = File.createTempFile("pdf-filled-" + new Date().getTime(), ".pdf");
+            tmp = workspace.createFile("pdf-filled-", ".pdf");
             PdfWriter desPdf = new PdfWriter(tmp);
             PdfReader srcPdf = new PdfReader(is);
 
@@ -73,15 +93,15 @@ public class PdfFillForm {
                                     if (font == null) {
                                         InputStream fontIs = null;
                                         try {
-                                            appLogger.info(String.format("Downloading font [%s]", fontFileId));
+                                            logInfo(String.format("Downloading font [%s]", fontFileId));
                                             fontIs = files.download(fontFileId).getFile();
-                                            File tmpFont = File.createTempFile("font", ".ttf");
+                                            File tmpFont = workspace.createFile("font", ".ttf");
                                             FileUtils.copyInputStreamToFile(fontIs, tmpFont);
                                             font = tmpFont.getPath();
                                             fonts.put(fontFileId, font);
-                                            appLogger.info(String.format("Done downloading font [%s]", fontFileId));
+                                            logInfo(String.format("Done downloading font [%s]", fontFileId));
                                         } catch (Exception ex) {
-                                            appLogger.error("Can not copy font. ", ex);
+                                            logError("Can not copy font. ", ex);
                                         } finally {
 
                                             try {
@@ -90,7 +110,7 @@ public class PdfFillForm {
                                                 }
 
                                             } catch (IOException ioe) {
-                                                appLogger.error("Can not close font. ", ioe);
+                                                logError("Can not close font. ", ioe);
                                             }
                                         }
                                     }
@@ -98,7 +118,7 @@ public class PdfFillForm {
                                         PdfFont pdfFont = PdfFontFactory.createFont(font, PdfEncodings.IDENTITY_H);
                                         formField.setFont(pdfFont);
                                     } else {
-                                        appLogger.error(String.format("Can not find font for %s", fontFileId));
+                                        logError(String.format("Can not find font for %s", fontFileId));
                                     }
                                 }
                                 if (fieldSettings.contains("value")) {
@@ -132,16 +152,16 @@ public class PdfFillForm {
                             }
                         }
                     } else {
-                        appLogger.info(String.format("Can not find field %s for pdf file %s", givenFormField, pdfFileId));
+                        logInfo(String.format("Can not find field %s for pdf file %s", givenFormField, pdfFileId));
                     }
                 }
             }
 
-            appLogger.info(String.format("Form [%s] was filled up successfully", pdfFileId));
+            logInfo(String.format("Form [%s] was filled up successfully", pdfFileId));
 
             return tmp;
         } catch (Exception ex) {
-            appLogger.error(String.format("Can not fill pdf file [%s]: " + ex.getMessage(), pdfFileId), ex);
+            logError(String.format("Can not fill pdf file [%s]: " + ex.getMessage(), pdfFileId), ex);
             logger.error(String.format("Can not fill pdf file [%s]", pdfFileId), ex);
         } finally {
             try {
@@ -152,13 +172,37 @@ public class PdfFillForm {
                     pdfDoc.close();
                 }
             } catch (IOException ioe) {
-                appLogger.error("Can not close PDF document. ", ioe);
+                logError("Can not close PDF document. ", ioe);
             }
         }
         return null;
 
     }
 
+    private void logInfo(String message) {
+        if (appLogger != null) {
+            appLogger.info(message);
+        } else {
+            logger.info(message);
+        }
+    }
+
+    private void logError(String message, Throwable ex) {
+        if (appLogger != null) {
+            appLogger.error(message, ex);
+        } else {
+            logger.error(message, ex);
+        }
+    }
+
+    private void logError(String message) {
+        if (appLogger != null) {
+            appLogger.error(message);
+        } else {
+            logger.error(message);
+        }
+    }
+
     private Color hex2Rgb(String colorStr) {
         StringUtils.replace(colorStr, "#", "");
         return new DeviceRgb(
@@ -1,7 +1,5 @@
 package io.slingr.endpoints.pdfGenerator;
 
-import freemarker.template.Configuration;
-import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import io.slingr.endpoints.Endpoint;
 import io.slingr.endpoints.exceptions.EndpointException;
@@ -13,29 +11,23 @@ import io.slingr.endpoints.framework.annotations.SlingrEndpoint;
 import io.slingr.endpoints.pdfGenerator.workers.*;
 import io.slingr.endpoints.services.AppLogs;
 import io.slingr.endpoints.services.rest.DownloadedFile;
-import io.slingr.endpoints.services.rest.RestClient;
-import io.slingr.endpoints.utils.FilesUtils;
 import io.slingr.endpoints.utils.Json;
 import io.slingr.endpoints.ws.exchange.FunctionRequest;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.*;
-import java.net.URLConnection;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>PDF Generator endpoint
@@ -56,12 +48,94 @@ public class PdfGenerator extends Endpoint {
     @EndpointProperty
     private boolean downloadImages;
 
+    @EndpointProperty
+    private String downloadImagesMode;
+
+    @EndpointProperty
+    private String tmpDirectory;
+
+    @EndpointProperty
+    private String renderEngine;
+
+    @EndpointProperty
+    private String renderTimeout;
+
+    @EndpointProperty
+    private String rendererPoolSize;
+
+    @EndpointProperty
+    private String rendererMaxJobs;
+
+    @EndpointProperty
+    private String imageCacheSize;
+
+    @EndpointProperty
+    private String imageCacheTtl;
+
+    @EndpointProperty
+    private String imageCacheDirectory;
+
+    @EndpointProperty
+    private String imageTimeout;
+
+    @EndpointProperty
+    private String imagesTotalTimeout;
+
+    @EndpointProperty
+    private String resultCacheSize;
+
+    @EndpointProperty
+    private String resultCacheTtl;
+
+    @EndpointProperty
+    private String queueSpillThreshold;
+
+    @EndpointProperty
+    private String uploadAttempts;
+
+    @EndpointProperty
+    private String prefetchSize;
+
+    @EndpointProperty
+    private String maxQueuedJobs;
+
+    @EndpointProperty
+    private String maxQueuedMegabytes;
+
+    @EndpointProperty
+    private String admissionLimits;
+
     private final int MAX_THREADS_POOL = 3;
+    private final int STATS_LOG_INTERVAL_MINUTES = 5;
+    private final int TMP_CLEANUP_INTERVAL_MINUTES = 10;
+    private final long STALE_WORKSPACE_MAX_AGE = 60L * 60 * 1000;
+    private static final String LOCAL_FILES_MODE = "localFiles";
 
     protected ExecutorService executorService;
 
+    private RenderScheduler renderScheduler;
+
+    private AdmissionControl admissionControl;
+
     public void endpointStarted() {
+        if (!properties().isLocalDeployment()) {
+            try {
+                PdfFilesUtils pdfFilesUtils = new PdfFilesUtils();
+                pdfFilesUtils.executeCommands();
+                pdfFilesUtils.exportResource("wkhtmltopdf");
+                pdfFilesUtils.exportResource("wkhtmltoimage");
+            } catch (Exception ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+        start();
+    }
 
+    /**
+     * Configures the endpoint from its properties and starts the workers. It does not depend on the
+     * platform, so the endpoint can also be started by tools that run it with local services.
+     */
+    protected void start() {
         int maxTreads = MAX_THREADS_POOL;
         try {
             maxTreads = Integer.valueOf(maxThreadPool);
@@ -69,33 +143,256 @@ public class PdfGenerator extends Endpoint {
         }
 
         PdfHeaderFooterHandler.downloadImages = this.downloadImages;
-        PdfEngine.downloadImages = this.downloadImages;
 
         this.executorService = Executors.newFixedThreadPool(maxTreads);
 
-        if (!properties().isLocalDeployment()) {
+        if (StringUtils.isNotBlank(tmpDirectory)) {
+            JobWorkspace.configure(new File(tmpDirectory));
+        }
+
+        if (downloadImages) {
+            configureImageCache();
+            if (LOCAL_FILES_MODE.equals(downloadImagesMode)) {
+                File imagesDirectory = new File(JobWorkspace.getRoot(), "pdf-images");
+                ImageInliner.useLocalFiles(new LocalImageStore(imagesDirectory, LocalImageStore.DEFAULT_MAX_BYTES));
+            }
+        }
+
+        if (StringUtils.isNotBlank(renderEngine)) {
             try {
-                PdfFilesUtils pdfFilesUtils = new PdfFilesUtils();
-                pdfFilesUtils.executeCommands();
-                pdfFilesUtils.exportResource("wkhtmltopdf");
-                pdfFilesUtils.exportResource("wkhtmltoimage");
+                PdfEngine.setDefaultEngine(renderEngine);
             } catch (Exception ex) {
-                logger.error(ex.getMessage(), ex);
+                logger.warn(String.format("Unknown render engine [%s], using [%s]", renderEngine, WkhtmltopdfEngine.NAME));
             }
         }
+        try {
+            ProcessWatchdog.setDefaultTimeout(Long.parseLong(renderTimeout) * 1000);
+        } catch (Exception ex) {
+        }
+        configureRendererPool();
+        configureResultCache();
+        configureAdmissionControl();
+        int spillThreshold = PayloadSpool.DEFAULT_THRESHOLD;
+        try {
+            spillThreshold = Integer.parseInt(queueSpillThreshold) * 1024;
+        } catch (Exception ex) {
+        }
+        PayloadSpool.configure(spillThreshold, PayloadSpool.DEFAULT_SEGMENT_SIZE);
+        int maxUploadAttempts = UploadStage.DEFAULT_MAX_ATTEMPTS;
+        try {
+            maxUploadAttempts = Integer.parseInt(uploadAttempts);
+        } catch (Exception ex) {
+        }
+        UploadStage.configure(maxTreads, maxUploadAttempts, UploadStage.DEFAULT_INITIAL_BACKOFF, UploadStage.DEFAULT_MAX_BACKOFF);
+        long prefetchBudget = Prefetcher.DEFAULT_BUDGET;
+        try {
+            prefetchBudget = Long.parseLong(prefetchSize) * 1024 * 1024;
+        } catch (Exception ex) {
+        }
+        Prefetcher.configure(maxTreads, prefetchBudget);
+        DocumentLoader.configure(maxTreads);
+        FlyingSaucerEngine.configure(maxTreads);
+
+        this.renderScheduler = new RenderScheduler(maxTreads);
+        this.renderScheduler.start();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleAtFixedRate(this::logStats,
+                STATS_LOG_INTERVAL_MINUTES, STATS_LOG_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        scheduler.scheduleAtFixedRate(() -> JobWorkspace.removeStaleWorkspaces(STALE_WORKSPACE_MAX_AGE),
+                TMP_CLEANUP_INTERVAL_MINUTES, TMP_CLEANUP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
 
+    private void configureRendererPool() {
+        int poolSize = 0;
+        try {
+            poolSize = Integer.parseInt(rendererPoolSize);
+        } catch (Exception ex) {
+        }
+        int maxJobs = RendererPool.DEFAULT_MAX_JOBS;
+        try {
+            maxJobs = Integer.parseInt(rendererMaxJobs);
+        } catch (Exception ex) {
+        }
+        RendererPool.configure(PdfEngine.WKHTMLTOPDF, poolSize, maxJobs);
+    }
 
-        Executors.newSingleThreadScheduledExecutor().execute(() -> {
-            while (true) {
-                generateAutoPdf();
+    private void configureResultCache() {
+        int cacheSize = 0;
+        try {
+            cacheSize = Integer.parseInt(resultCacheSize);
+        } catch (Exception ex) {
+        }
+        long cacheTtl = ResultCache.DEFAULT_TTL;
+        try {
+            cacheTtl = Long.parseLong(resultCacheTtl) * 1000;
+        } catch (Exception ex) {
+        }
+        ResultCache.configure(cacheSize, cacheTtl);
+    }
+
+    private void configureAdmissionControl() {
+        int maxJobs = AdmissionControl.DEFAULT_MAX_JOBS;
+        try {
+            maxJobs = Integer.parseInt(maxQueuedJobs);
+        } catch (Exception ex) {
+        }
+        long maxBytes = AdmissionControl.DEFAULT_MAX_BYTES;
+        try {
+            maxBytes = Long.parseLong(maxQueuedMegabytes) * 1024 * 1024;
+        } catch (Exception ex) {
+        }
+        this.admissionControl = new AdmissionControl(maxJobs, maxBytes);
+        if (StringUtils.isNotBlank(admissionLimits)) {
+            try {
+                this.admissionControl.setLimits(Json.parse(admissionLimits));
+            } catch (Exception ex) {
+                logger.warn(String.format("Invalid admission limits [%s], using the default ones", admissionLimits), ex);
+            }
+        }
+    }
+
+    /**
+     * Accepts the request if the function is under its limits. The payload of the request is
+     * used as an estimation of the memory it takes while it is queued.
+     */
+    private AdmissionControl.Ticket admit(String function, FunctionRequest request, int jobs) {
+        Json params = request.getJsonParams();
+        long bytes = params != null ? params.toString().length() * 2L : 0;
+        return admissionControl.admit(function, jobs, bytes);
+    }
+
+    private Json submitWorker(String function, FunctionRequest request, Runnable worker, Json resp) {
+        AdmissionControl.Ticket ticket = admit(function, request, 1);
+        long submittedAt = System.currentTimeMillis();
+        Metrics.getInstance().request(function);
+        try {
+            this.executorService.submit(() -> {
+                Metrics metrics = Metrics.getInstance();
+                metrics.record(function, Metrics.QUEUE, System.currentTimeMillis() - submittedAt);
                 try {
-                    Thread.sleep(3000);
-                } catch (InterruptedException e) {
-                    logger.info("Generate pdf thread was interrupted.");
+                    worker.run();
+                } catch (RuntimeException ex) {
+                    // the app is answered so it does not wait for a response that never comes
+                    metrics.error(function);
+                    logger.error(String.format("Failed to process [%s] request", function), ex);
+                    Json res = Json.map();
+                    res.set("status", "error");
+                    res.set("message", EndpointException.json(ErrorCode.GENERAL, "Failed to process the request: " + ex.getMessage(), ex));
+                    events().send("pdfResponse", res, request.getFunctionId());
+                } finally {
+                    metrics.record(function, Metrics.TOTAL, System.currentTimeMillis() - submittedAt);
+                    ticket.close();
                 }
+            });
+        } catch (RuntimeException ex) {
+            ticket.close();
+            throw ex;
+        }
+        return resp.set("queued", ticket.getQueued());
+    }
+
+    private void configureImageCache() {
+        long cacheSize = ImageCache.DEFAULT_MAX_BYTES;
+        try {
+            cacheSize = Long.parseLong(imageCacheSize) * 1024 * 1024;
+        } catch (Exception ex) {
+        }
+        long cacheTtl = ImageCache.DEFAULT_TTL;
+        try {
+            cacheTtl = Long.parseLong(imageCacheTtl) * 1000;
+        } catch (Exception ex) {
+        }
+        File spillDirectory = StringUtils.isNotBlank(imageCacheDirectory) ? new File(imageCacheDirectory) : null;
+        ImageCache.configure(cacheSize, cacheTtl, spillDirectory);
+        long fetchTimeout = ImageInliner.DEFAULT_FETCH_TIMEOUT;
+        try {
+            fetchTimeout = Long.parseLong(imageTimeout) * 1000;
+        } catch (Exception ex) {
+        }
+        long totalTimeout = 0;
+        try {
+            totalTimeout = Long.parseLong(imagesTotalTimeout) * 1000;
+        } catch (Exception ex) {
+        }
+        ImageInliner.configure(fetchTimeout, totalTimeout);
+    }
+
+    private void logStats() {
+        try {
+            if (downloadImages) {
+                logger.info(String.format("Image cache stats %s", ImageCache.getInstance().getStats().toString()));
             }
-        });
+            if (ResultCache.isEnabled()) {
+                logger.info(String.format("Result cache stats %s", ResultCache.getInstance().getStats().toString()));
+            }
+            ProcessWatchdog watchdog = ProcessWatchdog.getInstance();
+            logger.info(String.format("Renderer processes: tracked [%s], timed out [%s], orphans killed [%s]",
+                    watchdog.getTrackedProcesses(), watchdog.getTimeouts(), watchdog.getOrphansKilled()));
+            logger.info(String.format("Job workspaces: active [%s], disk usage [%s] bytes, peak job size [%s] bytes",
+                    JobWorkspace.getActiveWorkspaces(), JobWorkspace.getDiskUsage(), JobWorkspace.getPeakBytes()));
+            logger.info(String.format("Queued jobs %s", admissionControl.getStats().toString()));
+            logger.info(String.format("Workers %s", getWorkerStats().toString()));
+            logger.info(String.format("Functions %s", Metrics.getInstance().getSummary()));
+            UploadStage uploadStage = UploadStage.getInstance();
+            logger.info(String.format("Uploads: done [%s], retried [%s], failed [%s]",
+                    uploadStage.getUploads(), uploadStage.getRetries(), uploadStage.getFailures()));
+            PayloadSpool spool = PayloadSpool.getInstance();
+            logger.info(String.format("Queued payloads written to disk [%s], [%s] bytes, disk usage [%s] bytes",
+                    spool.getSpilled(), spool.getSpilledBytes(), spool.getDiskUsage()));
+        } catch (Exception ex) {
+            logger.warn("Can not log endpoint stats", ex);
+        }
+    }
 
+    private Json getWorkerStats() {
+        Json stats = Json.map();
+        stats.set("renderQueue", renderScheduler.getQueueSize());
+        stats.set("activeRenderWorkers", renderScheduler.getActiveWorkers());
+        stats.set("renderWorkers", renderScheduler.getWorkers());
+        if (executorService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) executorService;
+            stats.set("workerQueue", executor.getQueue().size());
+            stats.set("activeWorkers", executor.getActiveCount());
+            stats.set("workers", executor.getMaximumPoolSize());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns latency histograms and counters of each function, and the state of queues, workers and caches.
+     */
+    @EndpointFunction(name = "_stats")
+    public Json stats(FunctionRequest request) {
+        Json stats = Json.map();
+        stats.set("functions", Metrics.getInstance().getStats());
+        stats.set("workers", getWorkerStats());
+        stats.set("queues", admissionControl.getStats());
+        UploadStage uploadStage = UploadStage.getInstance();
+        stats.set("uploads", Json.map()
+                .set("done", uploadStage.getUploads())
+                .set("retried", uploadStage.getRetries())
+                .set("failed", uploadStage.getFailures()));
+        if (downloadImages) {
+            stats.set("imageCache", ImageCache.getInstance().getStats());
+        }
+        if (ResultCache.isEnabled()) {
+            stats.set("resultCache", ResultCache.getInstance().getStats());
+        }
+        ProcessWatchdog watchdog = ProcessWatchdog.getInstance();
+        stats.set("rendererProcesses", Json.map()
+                .set("tracked", watchdog.getTrackedProcesses())
+                .set("timedOut", watchdog.getTimeouts())
+                .set("orphansKilled", watchdog.getOrphansKilled())
+                .set("runawayRenders", FlyingSaucerEngine.getRunawayRenders()));
+        PayloadSpool spool = PayloadSpool.getInstance();
+        stats.set("disk", Json.map()
+                .set("activeWorkspaces", JobWorkspace.getActiveWorkspaces())
+                .set("workspacesBytes", JobWorkspace.getDiskUsage())
+                .set("peakJobBytes", JobWorkspace.getPeakBytes())
+                .set("spilledPayloads", spool.getSpilled())
+                .set("spoolBytes", spool.getDiskUsage()));
+        return stats;
     }
 
     @EndpointFunction(name = "_generatePdf")
@@ -112,190 +409,262 @@ public class PdfGenerator extends Endpoint {
         if (jData == null) {
             jData = Json.map();
         }
+        Json settings = data.json("settings");
+        PdfEngine.getRenderEngine(settings);
 
-
-        Configuration cfg = new Configuration();
-        Template tpl;
-        StringWriter sw = null;
+        AdmissionControl.Ticket ticket = null;
+        boolean submitted = false;
         try {
-            tpl = new Template("name", new StringReader(template), cfg);
-            tpl.setAutoFlush(true);
-            sw = new StringWriter();
-            tpl.process(jData.toMap(), sw);
-            String swString = sw.toString();
+            long receivedAt = System.currentTimeMillis();
+            String swString;
+            try (Metrics.Timer timer = Metrics.getInstance().time("generatePdf", Metrics.TEMPLATE)) {
+                swString = TemplateCache.getInstance().process(template, jData.toMap());
+            }
+            // documents that are complete without downloading images are answered from the result cache
+            // without taking a place in the queue
+            String cacheKey = null;
+            ResultCache resultCache = ResultCache.getInstance();
+            // parsed once, for the result cache and for the download of the images
+            Set<String> imageUrls = downloadImages ? ImageInliner.findImageUrls(swString) : Collections.emptySet();
+            if (resultCache != null && imageUrls.isEmpty()) {
+                cacheKey = ResultCache.key(swString, settings, PdfEngine.getRenderEngine(settings).getVersion());
+                Json cachedFile = resultCache.get(cacheKey);
+                if (cachedFile != null) {
+                    Metrics.getInstance().request("generatePdf");
+                    logger.info("Reusing file generated for an identical document");
+                    Json res = Json.map();
+                    res.set("status", "ok");
+                    res.set("file", cachedFile);
+                    sendPdfResponse(res, request.getFunctionId(), receivedAt);
+                    resp.set("status", "ok");
+                    resp.set("queued", 0);
+                    return resp;
+                }
+            }
+
+            // the job is charged with the size of its HTML once it is stored, not with the size of the request
+            AdmissionControl.Ticket admitted = admissionControl.admit("generatePdf", 1, 0);
+            ticket = admitted;
+            long acceptedAt = System.currentTimeMillis();
+            Metrics.getInstance().request("generatePdf");
             if (downloadImages) {
-                Map<String, String> urlImgs = extractImageUrlsFromHtml(swString);
-                for (Map.Entry<String, String> entry : urlImgs.entrySet()) {
-                    swString = swString.replace(entry.getKey(), entry.getValue());
+                try (Metrics.Timer timer = Metrics.getInstance().time("generatePdf", Metrics.DOWNLOAD)) {
+                    swString = ImageInliner.inline(swString, imageUrls);
                 }
             }
-            data.set("tpl", swString);
-            QueuePdf.getStreamInstance().add(request);
+            // only the descriptor of the job is queued, the HTML is read back by the worker
+            PayloadSpool.Payload html = PayloadSpool.getInstance().store(swString);
+            admitted.addBytes(html.getMemorySize());
+            String functionId = request.getFunctionId();
+            String checkedCacheKey = cacheKey;
+            long queuedAt = System.currentTimeMillis();
+            renderScheduler.submit(() -> {
+                Metrics.getInstance().record("generatePdf", Metrics.QUEUE, System.currentTimeMillis() - queuedAt);
+                CompletableFuture<Void> upload = null;
+                try {
+                    upload = createPdf(functionId, settings, html, checkedCacheKey, acceptedAt);
+                } finally {
+                    html.close();
+                    if (upload != null) {
+                        upload.whenComplete((result, ex) -> admitted.close());
+                    } else {
+                        admitted.close();
+                    }
+                }
+            });
+            submitted = true;
             resp.set("status", "ok");
+            resp.set("queued", admitted.getQueued());
         } catch (IOException e) {
+            Metrics.getInstance().error("generatePdf");
             logger.error("Can not generate PDF, I/O exception", e);
             throw EndpointException.permanent(ErrorCode.GENERAL, "Failed to create file", e);
         } catch (TemplateException e) {
+            Metrics.getInstance().error("generatePdf");
             logger.error("Can not generate PDF, template exception", e);
             throw EndpointException.permanent(ErrorCode.GENERAL, "Failed to parse template", e);
         } finally {
-            try {
-                if (sw != null) {
-                    sw.flush();
-                    sw.close();
-                }
-            } catch (IOException ioe) {
-                logger.info("String writer can not be closed.");
+            if (!submitted && ticket != null) {
+                ticket.close();
             }
         }
 
         return resp;
     }
 
-    /**
-     * Extracts image URLs from the provided HTML content.
-     *
-     * @param html The HTML content from which to extract image URLs.
-     * @return A map containing the original image URLs as keys and their local paths as values.
-     */
-    public static Map<String, String> extractImageUrlsFromHtml(String html) {
-        Map<String, String> imageUrls = new LinkedHashMap<>();
-        Document document = Jsoup.parse(html);
-        Elements imgElements = document.select("img");
-        for (Element imgElement : imgElements) {
-            String url = imgElement.attr("src");
-            String base64Image = convertImageToBase64(url);
-            String imageType = URLConnection.guessContentTypeFromName(downloadImageToTmp(url).getName());
-            String dataUrl = "data:" + imageType + ";base64, " + base64Image;
-            //imageUrls.put(url, "file:///" + downloadImageToTmp(url));
-            imageUrls.put(url, dataUrl);
-        }
-        return imageUrls;
-    }
+    @EndpointFunction(name = "_generatePdfBatch")
+    public Json generatePdfBatch(FunctionRequest request) {
+        Json data = request.getJsonParams();
+        String template = data.string("template");
+        if (StringUtils.isBlank(template)) {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, "Template can not be empty.");
+        }
+        Json records = data.json("records");
+        if (records == null || !records.isList() || records.isEmpty()) {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, "Records should be a non empty list.");
+        }
+        boolean combine = Boolean.TRUE.equals(data.bool("combine"));
+        PdfEngine.getRenderEngine(data.json("settings"));
+        logger.info(String.format("Creating batch of [%s] pdf files from template", records.size()));
 
-    private static String convertImageToBase64(String imageUrl) {
-        RestClient restClient = RestClient.builder(imageUrl);
-        DownloadedFile file = restClient.download();
-        byte[] fileContent;
+        AdmissionControl.Ticket ticket = admit("generatePdfBatch", request, records.size());
+        Metrics.getInstance().request("generatePdfBatch");
         try {
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            int nRead;
-            byte[] data = new byte[1024];
-
-            while ((nRead = file.getFile().read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-            }
-
-            buffer.flush();
-            fileContent = buffer.toByteArray();
+            TemplateCache.getInstance().getTemplate(template);
+            PdfBatch batch = new PdfBatch(events(), files(), request, template, data.json("settings"),
+                    records.jsons(), combine, downloadImages, ticket);
+            batch.submitTo(renderScheduler);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            ticket.close();
+            logger.error("Can not generate PDF batch, I/O exception", e);
+            throw EndpointException.permanent(ErrorCode.GENERAL, "Failed to parse template", e);
+        } catch (RuntimeException e) {
+            ticket.close();
+            throw e;
         }
-        return Base64.getEncoder().encodeToString(fileContent);
+
+        return Json.map().set("status", "ok").set("records", records.size()).set("queued", ticket.getQueued());
     }
 
     /**
-     * Downloads an image from the provided URL to a temporary location.
+     * Extracts image URLs from the provided HTML content.
      *
-     * @param imageUrl The URL of the image to download.
-     * @return The local file.
+     * @param html The HTML content from which to extract image URLs.
+     * @return A map containing the original image URLs as keys and their data URLs as values.
      */
-    private static File downloadImageToTmp(String imageUrl) {
-        RestClient restClient = RestClient.builder(imageUrl);
-        DownloadedFile file = restClient.download();
-        return FilesUtils.copyInputStreamToTemporaryFile("", file.getFile());
+    public static Map<String, String> extractImageUrlsFromHtml(String html) {
+        return ImageInliner.extractImageUrls(html);
     }
 
     @EndpointFunction(name = "_fillForm")
     public Json fillForm(FunctionRequest request) {
         FillFormWorker worker = new FillFormWorker(events(), files(), appLogger, request);
-        this.executorService.submit(worker);
-        return Json.map();
+        return submitWorker("fillForm", request, worker, Json.map());
     }
 
     @EndpointFunction(name = "_mergeDocuments")
     public Json mergeDocuments(FunctionRequest request) {
         MergeDocumentsWorker worker = new MergeDocumentsWorker(events(), files(), appLogger, request);
-        this.executorService.submit(worker);
-        return Json.map().set("status", "ok");
+        return submitWorker("mergeDocuments", request, worker, Json.map().set("status", "ok"));
     }
 
     @EndpointFunction(name = "_splitDocument")
     public Json splitDocument(FunctionRequest request) {
         SplitDocumentWorker worker = new SplitDocumentWorker(events(), files(), appLogger, request);
-        this.executorService.submit(worker);
-        return Json.map().set("status", "ok");
+        return submitWorker("splitDocument", request, worker, Json.map().set("status", "ok"));
     }
 
     @EndpointFunction(name = "_replaceHeaderAndFooter")
     public Json replaceHeaderAndFooter(FunctionRequest request) {
         ReplaceHeaderAndFooterWorker worker = new ReplaceHeaderAndFooterWorker(events(), files(), appLogger, request);
-        this.executorService.submit(worker);
-        return Json.map().set("status", "ok");
+        return submitWorker("replaceHeaderAndFooter", request, worker, Json.map().set("status", "ok"));
     }
 
-    private void createPdf(FunctionRequest req) {
-        createPdf(req, true);
-    }
-
-    private void createPdf(FunctionRequest req, boolean retry) {
+    /**
+     * Renders the document and hands it off to the {@link UploadStage}, so the render worker is free as
+     * soon as the file is on disk. Failed uploads are retried with the same file.
+     *
+     * @param cacheKey key of the document if the result cache was already checked when the request was received
+     * @return the pending upload, or null if the response was already sent
+     */
+    private CompletableFuture<Void> createPdf(String functionId, Json settings, PayloadSpool.Payload html, String cacheKey, long acceptedAt) {
         logger.info("Creating pdf file");
         Json res = Json.map();
-        InputStream is = null;
+        JobWorkspace workspace = null;
         try {
-            Json data = req.getJsonParams();
-            String template = data.string("tpl");
-            Json settings = data.json("settings");
-            PdfEngine pdfEngine = new PdfEngine(template, settings, downloadImages);
-            is = pdfEngine.getPDF();
-            if (is != null) {
-                try {
-                    logger.info("Uploading file to endpoint services");
-                    Json fileJson = files().upload(pdfEngine.getFileName(), is, "application/pdf");
-                    logger.info("Done uploading file to endpoint services");
+            workspace = JobWorkspace.create("generate");
+            String template = html.read();
+            ResultCache resultCache = ResultCache.getInstance();
+            if (resultCache != null && cacheKey == null) {
+                cacheKey = ResultCache.key(template, settings, PdfEngine.getRenderEngine(settings).getVersion());
+                Json cachedFile = resultCache.get(cacheKey);
+                if (cachedFile != null) {
+                    logger.info("Reusing file generated for an identical document");
                     res.set("status", "ok");
-                    res.set("file", fileJson);
-                } catch (Exception e) {
-                    logger.error("Problems uploading file to endpoint services", e);
-                    if (retry) {
-                        logger.info("Retrying uploading");
-                        createPdf(req, false);
-                    }
-                } finally {
-                    pdfEngine.cleanTmpFiles();
-                    try {
-                        is.close();
-                    } catch (IOException io) {
-                        logger.info("Can not close stream", io);
-                    }
+                    res.set("file", cachedFile);
+                    sendPdfResponse(res, functionId, acceptedAt);
+                    return null;
+                }
+            }
+            PdfEngine pdfEngine = new PdfEngine(template, settings, downloadImages, workspace);
+            File pdf = workspace.createFile("pdf-", ".pdf");
+            try (Metrics.Timer timer = Metrics.getInstance().time("generatePdf", Metrics.RENDER);
+                 InputStream is = pdfEngine.getPDF()) {
+                if (is != null) {
+                    FileUtils.copyInputStreamToFile(is, pdf);
+                } else {
+                    pdf = null;
                 }
+            }
+            if (pdf != null) {
+                logger.info("Uploading file to endpoint services");
+                JobWorkspace uploadWorkspace = workspace;
+                String uploadCacheKey = cacheKey;
+                Metrics.Timer uploadTimer = Metrics.getInstance().time("generatePdf", Metrics.UPLOAD);
+                // the workspace is removed when the upload ends
+                workspace = null;
+                return UploadStage.getInstance().upload(files(), pdfEngine.getFileName(), pdf, "application/pdf")
+                        .handle((fileJson, ex) -> {
+                            uploadTimer.close();
+                            uploadWorkspace.close();
+                            Json uploadRes = Json.map();
+                            if (ex != null) {
+                                logger.error("Problems uploading file to endpoint services", ex);
+                                uploadRes.set("status", "error");
+                                uploadRes.set("message", EndpointException.json(ErrorCode.GENERAL, "Failed to upload PDF: " + ex.getMessage(), ex));
+                            } else {
+                                logger.info("Done uploading file to endpoint services");
+                                uploadRes.set("status", "ok");
+                                uploadRes.set("file", fileJson);
+                                if (resultCache != null) {
+                                    resultCache.put(uploadCacheKey, fileJson);
+                                }
+                            }
+                            sendPdfResponse(uploadRes, functionId, acceptedAt);
+                            return null;
+                        });
             } else {
                 logger.warn("PDF file can not be generated");
                 res.set("status", "error");
                 res.set("message", EndpointException.json(ErrorCode.GENERAL, "PDF file was not generated."));
             }
+        } catch (RenderTimeoutException ex) {
+            logger.warn(String.format("PDF render timed out after [%s] ms", ex.getTimeout()));
+            res = ex.toResponse();
         } catch (Exception ex) {
             logger.info("Failed to generate PDF", ex);
             res.set("status", "error");
             res.set("message", EndpointException.json(ErrorCode.GENERAL, "Failed to generate PDF: " + ex.getMessage(), ex));
+        } finally {
+            if (workspace != null) {
+                workspace.close();
+            }
+        }
+        sendPdfResponse(res, functionId, acceptedAt);
+        return null;
+    }
+
+    private void sendPdfResponse(Json res, String functionId, long acceptedAt) {
+        Metrics metrics = Metrics.getInstance();
+        metrics.response("generatePdf", res);
+        logger.info("Sending [pdfResponse] event to the app");
+        try (Metrics.Timer timer = metrics.time("generatePdf", Metrics.EVENT)) {
+            events().send("pdfResponse", res, functionId);
         }
-        logger.info("Pdf has been successfully created. Sending [pdfResponse] event to the app");
-        events().send("pdfResponse", res, req.getFunctionId());
         logger.info("Done sending [pdfResponse] event to the app");
+        metrics.record("generatePdf", Metrics.TOTAL, System.currentTimeMillis() - acceptedAt);
     }
 
     @EndpointFunction(name = "_replaceImages")
     public Json replaceImages(FunctionRequest request) {
         ReplaceImagesWorker worker = new ReplaceImagesWorker(events(), files(), appLogger, request);
-        this.executorService.submit(worker);
-        return Json.map();
+        return submitWorker("replaceImages", request, worker, Json.map());
     }
 
     @EndpointFunction(name = "_addImages")
     public Json addImages(FunctionRequest request) {
         AddImagesWorker worker = new AddImagesWorker(events(), files(), appLogger, request);
-        this.executorService.submit(worker);
-        return Json.map();
+        return submitWorker("addImages", request, worker, Json.map());
     }
 
     @EndpointFunction(name = "_convertPdfToImages")
@@ -308,30 +677,34 @@ public class PdfGenerator extends Endpoint {
         if (dpi > 600) {
             throw EndpointException.permanent(ErrorCode.ARGUMENT, "DPI cannot be greater than 600.");
         }
-        Executors.newSingleThreadScheduledExecutor().execute(() -> {
+        return submitWorker("convertPdfToImages", request, () -> {
             logger.info("Executing function in a separated thread");
             Json convertedImages = Json.map();
             for (Object pdfId : fileIds.toArray()) {
-                DownloadedFile file = files().download(pdfId.toString());
+                DownloadedFile file;
+                try (Metrics.Timer timer = Metrics.getInstance().time("convertPdfToImages", Metrics.DOWNLOAD)) {
+                    file = files().download(pdfId.toString());
+                }
                 List<String> ids = new ArrayList<>();
-                try {
+                try (JobWorkspace workspace = JobWorkspace.create("images");
+                     InputStream is = file.getFile();
+                     PDDocument document = DocumentLoader.load(is, workspace)) {
                     logger.info("Converting PDF to images");
-                    PDDocument document = PDDocument.load(file.getFile());
                     PDFRenderer pdfRenderer = new PDFRenderer(document);
                     for (int page = 0; page < document.getNumberOfPages(); ++page) {
-                        BufferedImage bim = pdfRenderer.renderImageWithDPI(page, dpi, ImageType.RGB);
-                        File tempFile = File.createTempFile("image-pdf", ".jpeg");
-                        ImageIO.write(bim, "JPEG", tempFile);
-                        FileInputStream in = new FileInputStream(tempFile);
-                        String fileName = tempFile.getName();
-                        Json response = files().upload(fileName, in, "image/jpeg");
+                        File tempFile = workspace.createFile("image-pdf", ".jpeg");
+                        try (Metrics.Timer timer = Metrics.getInstance().time("convertPdfToImages", Metrics.RENDER)) {
+                            PdfFilesUtils.renderPageToJpeg(pdfRenderer, page, dpi, tempFile);
+                        }
+                        Json response;
+                        try (Metrics.Timer timer = Metrics.getInstance().time("convertPdfToImages", Metrics.UPLOAD)) {
+                            response = UploadStage.getInstance().uploadAndWait(files(), tempFile.getName(), tempFile, "image/jpeg");
+                        }
                         ids.add(response.string("fileId"));
-                        in.close();
                         tempFile.delete();
                     }
                     logger.info("PDF converted successfully to images");
                     convertedImages.set(pdfId.toString(), ids);
-                    document.close();
                 } catch (IOException e) {
                     appLogger.error("Can not convert PDF, I/O exception", e);
                     logger.error("Can not convert PDF, I/O exception", e);
@@ -341,18 +714,10 @@ public class PdfGenerator extends Endpoint {
             resp.set("status", "ok");
             resp.set("imagesIds", convertedImages);
             resp.set("config", settings);
-            events().send("pdfResponse", resp, request.getFunctionId());
-        });
-
-        return Json.map().set("status", "ok");
-    }
-
-    private final ReentrantLock pdfLock = new ReentrantLock();
-
-    private void generateAutoPdf() {
-        while (QueuePdf.getStreamInstance().getTotalSize() > 0) {
-            createPdf(QueuePdf.getStreamInstance().poll());
-        }
+            try (Metrics.Timer timer = Metrics.getInstance().time("convertPdfToImages", Metrics.EVENT)) {
+                events().send("pdfResponse", resp, request.getFunctionId());
+            }
+        }, Json.map().set("status", "ok"));
     }
 
 }
@@ -1,10 +1,7 @@
 package io.slingr.endpoints.pdfGenerator;
 
-import freemarker.template.Configuration;
-import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import io.slingr.endpoints.utils.Json;
-import io.slingr.endpoints.utils.Strings;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -33,9 +30,19 @@ public class PdfHeaderFooterHandler {
     private static Logger logger = LoggerFactory.getLogger(PdfHeaderFooterHandler.class);
 
     private Map<String, String> tempFiles = new HashMap<>();
+    private JobWorkspace workspace;
+    private boolean timedOut;
 
     public static boolean downloadImages;
 
+    public PdfHeaderFooterHandler() throws IOException {
+        this(JobWorkspace.create("header-footer"));
+    }
+
+    public PdfHeaderFooterHandler(JobWorkspace workspace) {
+        this.workspace = workspace;
+    }
+
     public String setHeaderWithImage(InputStream report, String headerTemplate, float hHeight, float hWidth, String footerTemplate, float fHeight, float fWidth) {
 
         if (headerTemplate != null) {
@@ -45,7 +52,7 @@ public class PdfHeaderFooterHandler {
             tempFiles.put(FOOTER_HTML_PATH, getTempFileFromTemplate(footerTemplate));
         }
 
-        try (final PDDocument document = PDDocument.load(report)) {
+        try (final PDDocument document = DocumentLoader.load(report, workspace)) {
 
             File tempHeader = getImageFromTemplate(tempFiles.get(HEADER_HTML_PATH), document, hHeight);
             if (tempHeader != null) {
@@ -76,13 +83,16 @@ public class PdfHeaderFooterHandler {
                 contents.close();
 
             }
-            File pdfTemp = File.createTempFile("result-" + new Date().getTime(), ".pdf");
+            File pdfTemp = workspace.createFile("result-", ".pdf");
             tempFiles.put("pdfFilePath", pdfTemp.getPath());
             document.save(pdfTemp);
             document.close();
 
             return pdfTemp.getPath();
 
+        } catch (RenderTimeoutException e) {
+            timedOut = true;
+            logger.warn("Header or footer image was not rendered in time");
         } catch (IOException e) {
             System.err.println("Exception while trying to create pdf document - " + e);
         }
@@ -93,7 +103,7 @@ public class PdfHeaderFooterHandler {
     private String getTempFileFromTemplate(String template) {
 
         try {
-            File temp = File.createTempFile("html-" + Strings.randomUUIDString(), ".html");
+            File temp = workspace.createFile("html-", ".html");
             FileUtils.writeStringToFile(temp, template, "UTF-8");
             return temp.getAbsolutePath();
         } catch (IOException e) {
@@ -108,8 +118,11 @@ public class PdfHeaderFooterHandler {
         File tempHeader = null;
 
         if (template != null) {
-            tempHeader = File.createTempFile("imag-" + new Date().getTime(), ".png");
+            tempHeader = workspace.createFile("imag-", ".png");
             InputStream isHeader = getImage(template, getPageWidth(document, 0), headerHeight);
+            if (isHeader == null) {
+                throw new IOException("Header or footer image was not generated.");
+            }
             FileUtils.copyInputStreamToFile(isHeader, tempHeader);
         }
 
@@ -117,7 +130,7 @@ public class PdfHeaderFooterHandler {
     }
 
     private File getImageFromInputStream(InputStream is) throws IOException {
-        File tempHeader = File.createTempFile("imag-" + new Date().getTime(), ".png");
+        File tempHeader = workspace.createFile("imag-", ".png");
         FileUtils.copyInputStreamToFile(is, tempHeader);
         return tempHeader;
     }
@@ -125,7 +138,7 @@ public class PdfHeaderFooterHandler {
     public String setHeaderWithImage(InputStream report, InputStream header, float hHeight, float hWidth, InputStream footer, int fHeight, float fWidth) {
 
 
-        try (final PDDocument document = PDDocument.load(report)) {
+        try (final PDDocument document = DocumentLoader.load(report, workspace)) {
 
             File tempHeader = null;
             if (header != null) {
@@ -162,7 +175,7 @@ public class PdfHeaderFooterHandler {
                 contents.close();
 
             }
-            File pdfTemp = File.createTempFile("result-" + new Date().getTime(), ".pdf");
+            File pdfTemp = workspace.createFile("result-", ".pdf");
             tempFiles.put("pdfFilePath", pdfTemp.getPath());
             document.save(pdfTemp);
             document.close();
@@ -186,7 +199,7 @@ public class PdfHeaderFooterHandler {
     }
 
     public float getPageHeight(InputStream document, int page) {
-        try (final PDDocument pdf = PDDocument.load(document)) {
+        try (final PDDocument pdf = DocumentLoader.load(document, workspace)) {
             if (pdf.getPages().getCount() > page) {
                 return pdf.getPages().get(page).getMediaBox().getHeight();
             }
@@ -197,7 +210,7 @@ public class PdfHeaderFooterHandler {
         return 0;
     }
 
-    public InputStream getImage(String path, float width, float height) {
+    public InputStream getImage(String path, float width, float height) throws RenderTimeoutException {
 
         String sourceTmpFile, targetTmpFile;
 
@@ -210,6 +223,10 @@ public class PdfHeaderFooterHandler {
         commandParams.add("--height");
         commandParams.add(Integer.toString((int) height));
 
+        if (downloadImages) {
+            commandParams.add("--enable-local-file-access");
+        }
+
         sourceTmpFile = path;
         targetTmpFile = path.replaceAll("\\.html", ".png");
         tempFiles.put(path, targetTmpFile);
@@ -228,17 +245,25 @@ public class PdfHeaderFooterHandler {
 
     }
 
-    public static InputStream openStream(List<String> commandParams, String targetTmpFile) {
+    public static InputStream openStream(List<String> commandParams, String targetTmpFile) throws RenderTimeoutException {
         ProcessBuilder pb;
         Process process = null;
+        long timeout = ProcessWatchdog.getDefaultTimeout();
         try {
             pb = new ProcessBuilder(commandParams);
             pb.inheritIO();
             process = pb.start();
-            int exitCode = process.waitFor();
-            logger.info(String.format("File processing exit with code %s", exitCode));
+            try (ProcessWatchdog.Watch watch = ProcessWatchdog.getInstance().watch(process, timeout, "wkhtmltoimage")) {
+                int exitCode = process.waitFor();
+                if (watch.isTimedOut()) {
+                    throw new RenderTimeoutException(timeout);
+                }
+                logger.info(String.format("File processing exit with code %s", exitCode));
+            }
 
             return FileUtils.openInputStream(new File(targetTmpFile));
+        } catch (RenderTimeoutException e) {
+            throw e;
         } catch (InterruptedException | IOException e) {
             logger.error("HTML can not be converted", e);
         } catch (Exception ex) {
@@ -255,21 +280,13 @@ public class PdfHeaderFooterHandler {
 
         try {
             if (StringUtils.isNotEmpty(template)) {
-                Configuration cfg = new Configuration();
-
-                Template tpl = new Template("name", new StringReader(template), cfg);
-                tpl.setAutoFlush(true);
-                StringWriter sw = new StringWriter();
+                String swString = "";
                 if (data != null) {
-                    tpl.process(data.toMap(), sw);
+                    swString = TemplateCache.getInstance().process(template, data.toMap());
                 }
-                String swString = sw.toString();
                 if (downloadImages) {
-                    Map<String, String> urlImgs = PdfGenerator.extractImageUrlsFromHtml(swString);
-                    for (Map.Entry<String, String> entry : urlImgs.entrySet()) {
-                        swString = swString.replace(entry.getKey(), entry.getValue());
-                    }
-                    logger.info(String.format("Template [%s]", swString));
+                    swString = ImageInliner.inline(swString);
+                    logger.debug(String.format("Template with images inlined has [%s] characters", swString.length()));
                 }
                 return swString;
 
@@ -282,14 +299,16 @@ public class PdfHeaderFooterHandler {
 
     }
 
-    public void cleanGeneratedFiles() {
-
-        for (String key : tempFiles.keySet()) {
-            if (tempFiles.get(key) != null) {
-                (new File(tempFiles.get(key))).delete();
-            }
-        }
+    /**
+     * True if the last header or footer could not be generated because the renderer exceeded its deadline.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
 
+    public void cleanGeneratedFiles() {
+        tempFiles.clear();
+        workspace.close();
     }
 
     private int getJsonProperty(Json json, String prop) {
@@ -0,0 +1,162 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs wkhtmltopdf reading the HTML from its standard input and writing the PDF to its standard
+ * output, so documents are rendered without temporary source and target files.
+ */
+public class PipedRenderer {
+
+    private static Logger logger = LoggerFactory.getLogger(PipedRenderer.class);
+
+    private static final long EXIT_TIMEOUT = 30;
+
+    private static final AtomicInteger inputThreads = new AtomicInteger();
+
+    private static final ExecutorService inputExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "pdf-render-input-" + inputThreads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts the render and returns the PDF as it is produced.
+     *
+     * @param commandParams wkhtmltopdf command without source and target
+     * @param html          document to render
+     * @param timeout       milliseconds the process can run, including the time to read its output
+     * @return stream with the PDF content, or null if the process did not produce any output. Closing
+     * the stream waits for the process to finish.
+     * @throws RenderTimeoutException if the process was killed because it exceeded the timeout
+     */
+    public static InputStream render(List<String> commandParams, String html, long timeout) throws RenderTimeoutException {
+        List<String> command = new ArrayList<>(commandParams);
+        command.add("-");
+        command.add("-");
+        Process process = null;
+        ProcessWatchdog.Watch watch = null;
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = pb.start();
+            watch = ProcessWatchdog.getInstance().watch(process, timeout, "wkhtmltopdf");
+            final Process started = process;
+            inputExecutor.execute(() -> writeInput(started, html));
+
+            PushbackInputStream output = new PushbackInputStream(process.getInputStream());
+            int first = output.read();
+            if (first == -1) {
+                int exitCode = waitFor(process);
+                watch.close();
+                if (watch.isTimedOut()) {
+                    throw new RenderTimeoutException(timeout);
+                }
+                logger.warn(String.format("File processing produced no output, exit code %s", exitCode));
+                return null;
+            }
+            output.unread(first);
+            return new ProcessInputStream(output, process, watch, timeout);
+        } catch (RenderTimeoutException e) {
+            throw e;
+        } catch (IOException e) {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+            if (watch != null) {
+                watch.close();
+                if (watch.isTimedOut()) {
+                    throw new RenderTimeoutException(timeout);
+                }
+            }
+            logger.error("HTML can not be converted", e);
+        }
+        return null;
+    }
+
+    private static void writeInput(Process process, String html) {
+        try (OutputStream stdin = process.getOutputStream()) {
+            stdin.write(html.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warn("Can not write HTML to wkhtmltopdf", e);
+        }
+    }
+
+    private static int waitFor(Process process) {
+        try {
+            if (process.waitFor(EXIT_TIMEOUT, TimeUnit.SECONDS)) {
+                return process.exitValue();
+            }
+            logger.warn("wkhtmltopdf did not exit after its output was read, killing it");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        process.destroyForcibly();
+        return -1;
+    }
+
+    private static class ProcessInputStream extends FilterInputStream {
+
+        private final Process process;
+        private final ProcessWatchdog.Watch watch;
+        private final long timeout;
+        private boolean closed;
+
+        private ProcessInputStream(InputStream in, Process process, ProcessWatchdog.Watch watch, long timeout) {
+            super(in);
+            this.process = process;
+            this.watch = watch;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return checkTimeout(super.read());
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return checkTimeout(super.read(b, off, len));
+        }
+
+        /**
+         * A process killed by the watchdog ends its output early, so the end of the stream is
+         * reported as a timeout instead of returning a truncated PDF.
+         */
+        private int checkTimeout(int read) throws RenderTimeoutException {
+            if (read == -1 && watch.isTimedOut()) {
+                throw new RenderTimeoutException(timeout);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                int exitCode = waitFor(process);
+                watch.close();
+                logger.info(String.format("File processing exit with code %s", exitCode));
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.services.Files;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the input files of a job ahead of the worker that uses them, so the worker processes a
+ * file while the next ones are downloaded instead of waiting for the file service between them.
+ * <p>
+ * Files are downloaded in a shared pool to files of the job workspace and returned by {@link #next}
+ * in their original order. New downloads start only while the files downloaded and not used yet take
+ * less than the budget, and the file the worker needs next is always downloaded, even if it alone is
+ * larger than the budget. As the size of a file is known once it is downloaded, the budget can be
+ * exceeded by the downloads in progress, that are limited to the size of the pool.
+ */
+public class Prefetcher implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(Prefetcher.class);
+
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+    private static final int DEFAULT_THREADS = 3;
+
+    private static volatile ExecutorService executorService = newPool(DEFAULT_THREADS);
+    private static volatile int threads = DEFAULT_THREADS;
+    private static volatile long defaultBudget = DEFAULT_BUDGET;
+
+    private final Files files;
+    private final String function;
+    private final JobWorkspace workspace;
+    private final List<String> fileIds;
+    private final List<CompletableFuture<File>> downloads = new ArrayList<>();
+    private final long[] sizes;
+    private final long budget;
+
+    private int started;
+    private int running;
+    private int consumed;
+    private long buffered;
+    private boolean closed;
+
+    /**
+     * Starts downloading the files.
+     *
+     * @param files     file service
+     * @param function  function of the job, for metrics
+     * @param workspace workspace of the job, where files are downloaded
+     * @param fileIds   ids of the files in the order they are used
+     */
+    public Prefetcher(Files files, String function, JobWorkspace workspace, List<String> fileIds) {
+        this.files = files;
+        this.function = function;
+        this.workspace = workspace;
+        this.fileIds = fileIds;
+        this.sizes = new long[fileIds.size()];
+        this.budget = defaultBudget;
+        for (int i = 0; i < fileIds.size(); i++) {
+            downloads.add(new CompletableFuture<>());
+        }
+        schedule();
+    }
+
+    /**
+     * Replaces the shared download pool.
+     *
+     * @param threads files downloaded at the same time
+     * @param budget  bytes each job can have downloaded ahead
+     */
+    public static void configure(int threads, long budget) {
+        ExecutorService previous = executorService;
+        Prefetcher.threads = Math.max(1, threads);
+        executorService = newPool(Prefetcher.threads);
+        defaultBudget = budget;
+        previous.shutdown();
+        logger.info(String.format("Prefetch uses [%s] threads and up to [%s] bytes per job", threads, budget));
+    }
+
+    private static ExecutorService newPool(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "pdf-prefetch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Waits for the next file. The file returned by the previous call is removed, so it must not be
+     * used anymore.
+     *
+     * @return the downloaded file
+     * @throws IOException if the file could not be downloaded
+     */
+    public File next() throws IOException {
+        CompletableFuture<File> download;
+        String fileId;
+        synchronized (this) {
+            releasePrevious();
+            if (consumed >= fileIds.size()) {
+                throw new NoSuchElementException("All files were already returned");
+            }
+            fileId = fileIds.get(consumed);
+            download = downloads.get(consumed++);
+            schedule();
+        }
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(String.format("File [%s] can not be downloaded", fileId), e.getCause());
+        }
+    }
+
+    private void releasePrevious() {
+        int previous = consumed - 1;
+        if (previous >= 0) {
+            File file = downloaded(previous);
+            if (file != null) {
+                FileUtils.deleteQuietly(file);
+            }
+            buffered -= sizes[previous];
+            sizes[previous] = 0;
+        }
+    }
+
+    private File downloaded(int index) {
+        CompletableFuture<File> download = downloads.get(index);
+        return download.isDone() && !download.isCompletedExceptionally() ? download.join() : null;
+    }
+
+    private void schedule() {
+        // the file needed next is always started, the following ones only under the budget
+        while (!closed && started < fileIds.size() && running < threads && (started == consumed || buffered < budget)) {
+            int index = started++;
+            running++;
+            try {
+                executorService.execute(() -> download(index));
+            } catch (Exception e) {
+                running--;
+                downloads.get(index).completeExceptionally(new IOException("Download can not be started", e));
+            }
+        }
+    }
+
+    private void download(int index) {
+        String fileId = fileIds.get(index);
+        synchronized (this) {
+            if (closed) {
+                running--;
+                downloads.get(index).completeExceptionally(new IOException("Prefetch was closed"));
+                return;
+            }
+        }
+        File file = null;
+        try (Metrics.Timer timer = Metrics.getInstance().time(function, Metrics.DOWNLOAD)) {
+            file = workspace.createFile("input-", ".tmp");
+            // unlike FileUtils it does not create the workspace again if the job already ended
+            try (InputStream is = files.download(fileId).getFile()) {
+                java.nio.file.Files.copy(is, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            logger.warn(String.format("File [%s] can not be downloaded: %s", fileId, e.getMessage()));
+            FileUtils.deleteQuietly(file);
+            synchronized (this) {
+                running--;
+                downloads.get(index).completeExceptionally(e instanceof IOException ? e
+                        : new IOException(String.format("File [%s] can not be downloaded", fileId), e));
+                schedule();
+            }
+            return;
+        }
+        synchronized (this) {
+            running--;
+            if (closed) {
+                FileUtils.deleteQuietly(file);
+            } else {
+                sizes[index] = file.length();
+                buffered += sizes[index];
+            }
+            downloads.get(index).complete(file);
+            schedule();
+        }
+    }
+
+    /**
+     * Stops downloading and removes the files downloaded and not used yet.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int i = Math.max(0, consumed - 1); i < started; i++) {
+            File file = downloaded(i);
+            if (file != null) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+        buffered = 0;
+    }
+}
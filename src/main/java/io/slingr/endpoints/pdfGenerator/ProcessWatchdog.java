@@ -0,0 +1,173 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the renderer processes started by the endpoint and kills the ones that run past
+ * their deadline, so a document that never finishes does not block a worker forever.
+ * <p>
+ * It also kills the processes started by this endpoint that are still running after they stopped
+ * being tracked, for example processes left by a job that failed without stopping them. Processes
+ * started by other JVMs on the same host are never touched.
+ */
+public class ProcessWatchdog {
+
+    private static Logger logger = LoggerFactory.getLogger(ProcessWatchdog.class);
+
+    public static final long DEFAULT_TIMEOUT = 2L * 60 * 1000;
+
+    private static final long CHECK_INTERVAL = 1000;
+    private static final long ORPHANS_CHECK_INTERVAL = 60L * 1000;
+    private static final long ORPHAN_MIN_AGE = 60L * 1000;
+
+    private static final ProcessWatchdog instance = new ProcessWatchdog();
+
+    private static volatile long defaultTimeout = DEFAULT_TIMEOUT;
+
+    private final Map<Process, Watch> watches = new ConcurrentHashMap<>();
+    // processes started by the endpoint and when they were registered, until they finish
+    private final Map<Process, Long> started = new ConcurrentHashMap<>();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong orphans = new AtomicLong();
+
+    private ProcessWatchdog() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pdf-process-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::killOrphans, ORPHANS_CHECK_INTERVAL, ORPHANS_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public static ProcessWatchdog getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the deadline used by renders that do not define their own timeout.
+     *
+     * @param timeout milliseconds
+     */
+    public static void setDefaultTimeout(long timeout) {
+        defaultTimeout = timeout;
+        logger.info(String.format("Render timeout set to [%s] ms", timeout));
+    }
+
+    public static long getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * Starts tracking a process.
+     *
+     * @param process process to track
+     * @param timeout milliseconds the process can run, or 0 for processes without deadline like the ones in the renderer pool
+     * @param name    name used in logs
+     * @return handle that must be closed when the process is not used anymore
+     */
+    public Watch watch(Process process, long timeout, String name) {
+        Watch watch = new Watch(process, timeout > 0 ? System.currentTimeMillis() + timeout : 0, name);
+        watches.put(process, watch);
+        started.putIfAbsent(process, System.currentTimeMillis());
+        return watch;
+    }
+
+    private void check() {
+        long now = System.currentTimeMillis();
+        for (Watch watch : watches.values()) {
+            try {
+                if (!isAlive(watch.process)) {
+                    watches.remove(watch.process);
+                } else if (watch.deadline > 0 && now > watch.deadline && !watch.timedOut) {
+                    watch.timedOut = true;
+                    timeouts.incrementAndGet();
+                    logger.warn(String.format("Process [%s] exceeded its deadline, killing it", watch.name));
+                    watch.process.destroyForcibly();
+                }
+            } catch (Exception e) {
+                logger.warn(String.format("Can not check process [%s]", watch.name), e);
+            }
+        }
+    }
+
+    private void killOrphans() {
+        long now = System.currentTimeMillis();
+        long minAge = Math.max(ORPHAN_MIN_AGE, defaultTimeout);
+        for (Map.Entry<Process, Long> entry : started.entrySet()) {
+            Process process = entry.getKey();
+            try {
+                if (!isAlive(process)) {
+                    started.remove(process);
+                } else if (!watches.containsKey(process) && now - entry.getValue() > minAge) {
+                    logger.warn(String.format("Killing orphan renderer process [%s] running for [%s] ms",
+                            RendererProcess.getPid(process), now - entry.getValue()));
+                    process.destroyForcibly();
+                    started.remove(process);
+                    orphans.incrementAndGet();
+                }
+            } catch (Exception e) {
+                logger.debug("Can not check orphan renderer process", e);
+            }
+        }
+    }
+
+    private static boolean isAlive(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    public int getTrackedProcesses() {
+        return watches.size();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getOrphansKilled() {
+        return orphans.get();
+    }
+
+    /**
+     * Tracked process. Closing it stops tracking the process, but does not stop it.
+     */
+    public class Watch implements Closeable {
+
+        private final Process process;
+        private final long deadline;
+        private final String name;
+        private volatile boolean timedOut;
+
+        private Watch(Process process, long deadline, String name) {
+            this.process = process;
+            this.deadline = deadline;
+            this.name = name;
+        }
+
+        /**
+         * True if the process was killed because it exceeded its deadline.
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        @Override
+        public void close() {
+            watches.remove(process, this);
+        }
+    }
+}
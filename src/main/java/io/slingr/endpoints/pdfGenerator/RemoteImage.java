@@ -0,0 +1,193 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Image downloaded from a template {@code <img>} URL.
+ */
+public class RemoteImage {
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final int DEFAULT_READ_TIMEOUT = 30000;
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private static volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private static volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+    private final String url;
+    private final byte[] content;
+    private final String contentType;
+    private final String etag;
+    private final String lastModified;
+    private volatile String hash;
+
+    public RemoteImage(String url, byte[] content, String contentType) {
+        this(url, content, contentType, null, null);
+    }
+
+    public RemoteImage(String url, byte[] content, String contentType, String etag, String lastModified) {
+        this.url = url;
+        this.content = content;
+        this.contentType = contentType;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Sets the connect and read timeouts of the downloads from the time an image can take to download,
+     * so a download that is not waited for anymore does not keep its thread for longer.
+     *
+     * @param timeout milliseconds an image can take to download
+     */
+    public static void configure(long timeout) {
+        int limit = (int) Math.max(1, Math.min(timeout, Integer.MAX_VALUE));
+        connectTimeout = Math.min(DEFAULT_CONNECT_TIMEOUT, limit);
+        readTimeout = limit;
+    }
+
+    /**
+     * Downloads the image in a single request. The content type is taken from the response when it
+     * is an image type, otherwise it is detected from the first bytes of the content.
+     *
+     * @param url absolute URL of the image
+     * @return the downloaded image
+     * @throws IOException if the image can not be downloaded
+     */
+    public static RemoteImage fetch(String url) throws IOException {
+        return fetch(url, null, null);
+    }
+
+    /**
+     * Downloads the image unless it was not modified since the given validators were returned.
+     *
+     * @param url          absolute URL of the image
+     * @param etag         entity tag of the cached copy, can be null
+     * @param lastModified last modified date of the cached copy, can be null
+     * @return the downloaded image or null if the server answered that the cached copy is still valid
+     * @throws IOException if the image can not be downloaded
+     */
+    public static RemoteImage fetch(String url, String etag, String lastModified) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setInstanceFollowRedirects(true);
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && (etag != null || lastModified != null)) {
+                return null;
+            }
+            if (status >= 400) {
+                throw new IOException(String.format("Image [%s] can not be downloaded, status [%s]", url, status));
+            }
+            byte[] content;
+            try (InputStream is = connection.getInputStream()) {
+                content = IOUtils.toByteArray(is);
+            }
+            return new RemoteImage(url, content, detectContentType(url, connection.getContentType(), content),
+                    connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static String detectContentType(String url, String responseType, byte[] content) {
+        if (StringUtils.isNotBlank(responseType)) {
+            String type = responseType.split(";")[0].trim().toLowerCase();
+            if (type.startsWith("image/")) {
+                return type;
+            }
+        }
+        String type = detectFromMagicBytes(content);
+        if (type == null) {
+            type = URLConnection.guessContentTypeFromName(url.split("[?#]")[0]);
+        }
+        return type != null ? type : DEFAULT_CONTENT_TYPE;
+    }
+
+    static String detectFromMagicBytes(byte[] c) {
+        if (startsWith(c, 0x89, 'P', 'N', 'G')) {
+            return "image/png";
+        }
+        if (startsWith(c, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(c, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(c, 'R', 'I', 'F', 'F') && c.length >= 12 && c[8] == 'W' && c[9] == 'E' && c[10] == 'B' && c[11] == 'P') {
+            return "image/webp";
+        }
+        if (startsWith(c, 'B', 'M')) {
+            return "image/bmp";
+        }
+        if (startsWith(c, 'I', 'I', 0x2A, 0x00) || startsWith(c, 'M', 'M', 0x00, 0x2A)) {
+            return "image/tiff";
+        }
+        if (startsWith(c, 0x00, 0x00, 0x01, 0x00)) {
+            return "image/x-icon";
+        }
+        String head = new String(c, 0, Math.min(c.length, 256), StandardCharsets.UTF_8).trim();
+        if (head.startsWith("<svg") || (head.startsWith("<?xml") && head.contains("<svg"))) {
+            return "image/svg+xml";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] content, int... prefix) {
+        if (content.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((content[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public String getHash() {
+        if (hash == null) {
+            hash = PdfFilesUtils.sha256(content);
+        }
+        return hash;
+    }
+
+    public String toDataUrl() {
+        return "data:" + contentType + ";base64," + Base64.getEncoder().encodeToString(content);
+    }
+}
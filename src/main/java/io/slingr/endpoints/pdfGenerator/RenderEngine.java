@@ -0,0 +1,32 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Backend that converts the HTML of a document into a PDF.
+ * <p>
+ * Implementations are shared by all the render workers, so they must be thread safe. The engine
+ * used by a document is selected with the {@code engine} setting or the endpoint configuration.
+ */
+public interface RenderEngine {
+
+    /**
+     * Name used to select the engine in settings and configuration.
+     */
+    String getName();
+
+    /**
+     * Version of the engine. Documents rendered by different versions are considered different.
+     */
+    String getVersion();
+
+    /**
+     * Renders a document.
+     *
+     * @param job document to render
+     * @return stream with the PDF content, or null if the PDF could not be generated
+     * @throws IOException if the document can not be rendered
+     */
+    InputStream render(RenderJob job) throws IOException;
+}
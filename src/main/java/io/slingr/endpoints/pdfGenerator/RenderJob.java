@@ -0,0 +1,65 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.utils.Json;
+
+/**
+ * Document to be rendered by a {@link RenderEngine}, with its header and footer already processed.
+ */
+public class RenderJob {
+
+    private final String html;
+    private final String headerHtml;
+    private final String footerHtml;
+    private final Json settings;
+    private final boolean downloadImages;
+    private final long timeout;
+    private final JobWorkspace workspace;
+
+    public RenderJob(String html, String headerHtml, String footerHtml, Json settings, boolean downloadImages,
+                     long timeout, JobWorkspace workspace) {
+        this.html = html;
+        this.headerHtml = headerHtml;
+        this.footerHtml = footerHtml;
+        this.settings = settings;
+        this.downloadImages = downloadImages;
+        this.timeout = timeout;
+        this.workspace = workspace;
+    }
+
+    public String getHtml() {
+        return html;
+    }
+
+    /**
+     * HTML of the header, or null if the document does not have one.
+     */
+    public String getHeaderHtml() {
+        return headerHtml;
+    }
+
+    /**
+     * HTML of the footer, or null if the document does not have one.
+     */
+    public String getFooterHtml() {
+        return footerHtml;
+    }
+
+    public Json getSettings() {
+        return settings;
+    }
+
+    public boolean isDownloadImages() {
+        return downloadImages;
+    }
+
+    /**
+     * Milliseconds the document can take to be rendered.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public JobWorkspace getWorkspace() {
+        return workspace;
+    }
+}
@@ -0,0 +1,100 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue of pending PDF renders consumed by a fixed pool of render workers.
+ * <p>
+ * Workers block on the queue, so a document starts rendering as soon as a worker is free
+ * and up to {@code workers} documents are rendered at the same time. Single documents and
+ * the records of a batch share the same queue.
+ */
+public class RenderScheduler {
+
+    private static Logger logger = LoggerFactory.getLogger(RenderScheduler.class);
+
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final int workers;
+    private ExecutorService executorService;
+
+    public RenderScheduler(int workers) {
+        this.workers = workers > 0 ? workers : 1;
+    }
+
+    public synchronized void start() {
+        if (executorService != null) {
+            return;
+        }
+        executorService = Executors.newFixedThreadPool(workers, new RenderThreadFactory());
+        for (int i = 0; i < workers; i++) {
+            executorService.execute(this::consume);
+        }
+        logger.info(String.format("Render scheduler started with [%s] workers", workers));
+    }
+
+    public synchronized void stop() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+    }
+
+    public void submit(Runnable render) {
+        queue.add(render);
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    private void consume() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Runnable render;
+            try {
+                render = queue.take();
+            } catch (InterruptedException e) {
+                logger.info("Render worker was interrupted.");
+                Thread.currentThread().interrupt();
+                return;
+            }
+            activeWorkers.incrementAndGet();
+            try {
+                render.run();
+            } catch (Throwable ex) {
+                // errors like OutOfMemoryError fail the job but must not end the worker
+                logger.error("Unexpected error rendering document", ex);
+            } finally {
+                activeWorkers.decrementAndGet();
+            }
+        }
+    }
+
+    private static class RenderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pdf-render-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
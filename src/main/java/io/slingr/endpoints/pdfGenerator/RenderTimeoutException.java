@@ -0,0 +1,35 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.utils.Json;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a document is not rendered before its deadline and the renderer was stopped.
+ */
+public class RenderTimeoutException extends IOException {
+
+    private final long timeout;
+
+    public RenderTimeoutException(long timeout) {
+        super(String.format("Render did not finish in %s seconds and was stopped.", timeout / 1000));
+        this.timeout = timeout;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Response sent to the app, with the {@code timeout} flag so it can be told apart from other errors.
+     */
+    public Json toResponse() {
+        Json res = Json.map();
+        res.set("status", "error");
+        res.set("timeout", true);
+        res.set("message", EndpointException.json(ErrorCode.GENERAL, getMessage()));
+        return res;
+    }
+}
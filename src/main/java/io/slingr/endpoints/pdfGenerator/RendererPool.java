@@ -0,0 +1,131 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Pool of long lived {@link RendererProcess} used instead of starting one wkhtmltopdf process per
+ * document.
+ * <p>
+ * Processes are started on demand up to the pool size. A process is recycled after the configured
+ * number of jobs, when its resident memory grows over the limit, or when a job fails or times out.
+ */
+public class RendererPool {
+
+    private static Logger logger = LoggerFactory.getLogger(RendererPool.class);
+
+    public static final int DEFAULT_MAX_JOBS = 200;
+    public static final long DEFAULT_MAX_RESIDENT_MEMORY = 512L * 1024 * 1024;
+
+    private static volatile RendererPool instance;
+
+    private final String binary;
+    private final int maxJobs;
+    private final long maxResidentMemory;
+    private final BlockingQueue<RendererProcess> idle;
+    private final Semaphore permits;
+
+    public RendererPool(String binary, int size, int maxJobs, long maxResidentMemory) {
+        this.binary = binary;
+        this.maxJobs = maxJobs;
+        this.maxResidentMemory = maxResidentMemory;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.permits = new Semaphore(size, true);
+    }
+
+    public static RendererPool getInstance() {
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * Enables the shared pool for wkhtmltopdf renders.
+     *
+     * @param binary  path of the wkhtmltopdf binary
+     * @param size    number of processes, 0 disables the pool
+     * @param maxJobs number of documents rendered by a process before it is replaced
+     */
+    public static void configure(String binary, int size, int maxJobs) {
+        RendererPool previous = instance;
+        instance = size > 0 ? new RendererPool(binary, size, maxJobs, DEFAULT_MAX_RESIDENT_MEMORY) : null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+        if (size > 0) {
+            logger.info(String.format("Renderer pool enabled with [%s] processes, recycled every [%s] jobs", size, maxJobs));
+        }
+    }
+
+    /**
+     * Renders a document in one of the processes of the pool, waiting for a free process if needed.
+     *
+     * @param args       wkhtmltopdf arguments without the binary
+     * @param targetFile output file included in the arguments
+     * @param timeout    milliseconds to wait for the document to be rendered
+     * @return true if the output file was generated
+     * @throws RenderTimeoutException if the document was not rendered in time, the process is replaced
+     */
+    public boolean render(List<String> args, File targetFile, long timeout) throws IOException, InterruptedException {
+        permits.acquire();
+        RendererProcess renderer = null;
+        boolean ok = false;
+        try {
+            renderer = idle.poll();
+            if (renderer == null || !renderer.isAlive()) {
+                if (renderer != null) {
+                    renderer.destroy();
+                }
+                renderer = RendererProcess.start(binary);
+            }
+            ok = renderer.render(args, targetFile, timeout);
+            return ok;
+        } finally {
+            if (renderer != null) {
+                release(renderer, ok);
+            }
+            permits.release();
+        }
+    }
+
+    private void release(RendererProcess renderer, boolean ok) {
+        if (!ok || !renderer.isAlive()) {
+            renderer.destroy();
+            return;
+        }
+        if (renderer.getJobs() >= maxJobs) {
+            logger.info(String.format("Recycling renderer process after [%s] jobs", renderer.getJobs()));
+            renderer.destroy();
+            return;
+        }
+        long rss = renderer.getResidentMemory();
+        if (rss > maxResidentMemory) {
+            logger.info(String.format("Recycling renderer process using [%s] bytes", rss));
+            renderer.destroy();
+            return;
+        }
+        if (!idle.offer(renderer)) {
+            renderer.destroy();
+        }
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public void shutdown() {
+        RendererProcess renderer;
+        while ((renderer = idle.poll()) != null) {
+            renderer.destroy();
+        }
+    }
+}
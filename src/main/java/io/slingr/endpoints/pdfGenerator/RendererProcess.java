@@ -0,0 +1,207 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long lived {@code wkhtmltopdf} process started with {@code --read-args-from-stdin}.
+ * <p>
+ * Each job is written as one line of arguments to the process input, and the process renders it
+ * without loading Qt, WebKit and fonts again. The end of a job is detected with the {@code Done}
+ * line printed by wkhtmltopdf on its error output. Jobs are not pipelined, so a process renders one
+ * document at a time.
+ */
+public class RendererProcess {
+
+    private static Logger logger = LoggerFactory.getLogger(RendererProcess.class);
+
+    private static final String DONE = "Done";
+    private static final String EXITED = "<exited>";
+
+    private final Process process;
+    private final ProcessWatchdog.Watch watch;
+    private final OutputStream stdin;
+    private final BlockingQueue<String> signals = new LinkedBlockingQueue<>();
+    private volatile boolean failed;
+    private int jobs;
+
+    private RendererProcess(Process process) {
+        this.process = process;
+        this.watch = ProcessWatchdog.getInstance().watch(process, 0, "wkhtmltopdf pool");
+        this.stdin = process.getOutputStream();
+    }
+
+    public static RendererProcess start(String binary) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(binary);
+        command.add("--read-args-from-stdin");
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        RendererProcess renderer = new RendererProcess(pb.start());
+        Thread reader = new Thread(renderer::readErrorOutput, "pdf-renderer-stderr");
+        reader.setDaemon(true);
+        reader.start();
+        return renderer;
+    }
+
+    /**
+     * Renders one document.
+     *
+     * @param args       wkhtmltopdf arguments for this document, without the binary
+     * @param targetFile output file included in the arguments
+     * @param timeout    milliseconds to wait for the document
+     * @return true if the document was rendered. If false the process should not be used anymore.
+     * @throws RenderTimeoutException if the document was not rendered in time. The process should not be used anymore.
+     * @throws InterruptedException   if the thread is interrupted while waiting
+     */
+    public boolean render(List<String> args, File targetFile, long timeout) throws RenderTimeoutException, InterruptedException {
+        signals.clear();
+        failed = false;
+        jobs++;
+        try {
+            stdin.write((toArgsLine(args) + "\n").getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+        } catch (IOException e) {
+            logger.warn("Can not send job to renderer process", e);
+            return false;
+        }
+        String signal = signals.poll(timeout, TimeUnit.MILLISECONDS);
+        if (signal == null) {
+            logger.warn(String.format("Renderer process did not finish job in [%s] ms", timeout));
+            throw new RenderTimeoutException(timeout);
+        }
+        if (EXITED.equals(signal)) {
+            logger.warn("Renderer process exited while rendering");
+            return false;
+        }
+        if (failed) {
+            logger.info("Renderer process reported errors while rendering, output is kept if present");
+        }
+        return targetFile.exists() && targetFile.length() > 0;
+    }
+
+    private void readErrorOutput() {
+        StringBuilder line = new StringBuilder();
+        try (InputStream stderr = process.getErrorStream()) {
+            int c;
+            while ((c = stderr.read()) != -1) {
+                if (c == '\n' || c == '\r') {
+                    String text = line.toString().trim();
+                    line.setLength(0);
+                    if (DONE.equals(text)) {
+                        signals.offer(DONE);
+                    } else if (text.startsWith("Exit with code") || text.startsWith("Error:")) {
+                        failed = true;
+                        logger.warn(String.format("Renderer process: %s", text));
+                    } else if (!text.isEmpty() && logger.isDebugEnabled()) {
+                        logger.debug(String.format("Renderer process: %s", text));
+                    }
+                } else {
+                    line.append((char) c);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Renderer process error output closed", e);
+        }
+        signals.offer(EXITED);
+    }
+
+    static String toArgsLine(List<String> args) {
+        StringBuilder sb = new StringBuilder();
+        for (String arg : args) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append('"');
+            for (char c : arg.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public boolean isAlive() {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Resident memory of the process in bytes, read from {@code /proc}. Returns -1 if it is not available.
+     */
+    public long getResidentMemory() {
+        long pid = getPid(process);
+        if (pid <= 0) {
+            return -1;
+        }
+        try {
+            for (String line : FileUtils.readLines(new File("/proc/" + pid + "/status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("Can not read renderer process memory", e);
+        }
+        return -1;
+    }
+
+    public void destroy() {
+        watch.close();
+        try {
+            stdin.close();
+        } catch (IOException e) {
+            logger.debug("Can not close renderer process input", e);
+        }
+        process.destroy();
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static long getPid(Process process) {
+        try {
+            Method pid = Process.class.getMethod("pid");
+            return (Long) pid.invoke(process);
+        } catch (Exception e) {
+            // Java 8 does not have Process.pid()
+        }
+        try {
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return pid.getInt(process);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
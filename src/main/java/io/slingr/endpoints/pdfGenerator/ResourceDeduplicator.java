@@ -0,0 +1,212 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces fonts, images and form XObjects that are repeated in a document with references to a
+ * single copy, which is common after merging documents generated from the same template, as each
+ * one brings its own copy of the resources.
+ * <p>
+ * Objects are compared by a hash of their content, including the encoded bytes of their streams and
+ * the objects they reference, so only identical objects are shared. Fonts and XObjects of the page
+ * resources are shared as a whole, and streams inside them, like font programs and soft masks, are
+ * shared too, so a font program embedded by fonts that are not identical is written once.
+ */
+public class ResourceDeduplicator {
+
+    private static final COSName[] CATEGORIES = {COSName.FONT, COSName.XOBJECT};
+    private static final byte[] CYCLE = {'c'};
+
+    private final Map<String, COSBase> canonicals = new HashMap<>();
+    private final Map<COSBase, byte[]> digests = new IdentityHashMap<>();
+    private final Set<COSBase> visiting = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<COSBase> visitedResources = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<COSBase> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int replacedObjects;
+    private long removedBytes;
+
+    /**
+     * Shares the repeated resources of the pages of the document. The document must be saved afterwards.
+     */
+    public void deduplicate(PDDocument document) throws IOException {
+        for (PDPage page : document.getPages()) {
+            if (page.getResources() != null) {
+                deduplicateResources(page.getResources().getCOSObject());
+            }
+        }
+    }
+
+    /**
+     * Objects replaced by a shared copy.
+     */
+    public int getReplacedObjects() {
+        return replacedObjects;
+    }
+
+    /**
+     * Encoded bytes of the streams that are not written anymore.
+     */
+    public long getRemovedBytes() {
+        return removedBytes;
+    }
+
+    private void deduplicateResources(COSDictionary resources) throws IOException {
+        if (resources == null || !visitedResources.add(resources)) {
+            return;
+        }
+        for (COSName category : CATEGORIES) {
+            COSBase entries = resources.getDictionaryObject(category);
+            if (!(entries instanceof COSDictionary)) {
+                continue;
+            }
+            COSDictionary named = (COSDictionary) entries;
+            for (COSName name : new ArrayList<>(named.keySet())) {
+                COSBase value = named.getDictionaryObject(name);
+                if (!(value instanceof COSDictionary)) {
+                    continue;
+                }
+                // forms have their own resources, which are shared before comparing the forms
+                COSBase formResources = ((COSDictionary) value).getDictionaryObject(COSName.RESOURCES);
+                if (formResources instanceof COSDictionary) {
+                    deduplicateResources((COSDictionary) formResources);
+                }
+                share(named, name, value);
+            }
+        }
+    }
+
+    private void share(COSDictionary parent, COSName key, COSBase value) throws IOException {
+        byte[] digest = digest(value);
+        if (digest == CYCLE) {
+            return;
+        }
+        COSBase canonical = canonicals.putIfAbsent(Base64.getEncoder().encodeToString(digest), value);
+        if (canonical != null && canonical != value) {
+            parent.setItem(key, canonical);
+            if (removed.add(value)) {
+                replacedObjects++;
+                if (value instanceof COSStream) {
+                    removedBytes += ((COSStream) value).getLength();
+                }
+            }
+        }
+    }
+
+    private byte[] digest(COSBase base) throws IOException {
+        if (base instanceof COSObject) {
+            return digest(((COSObject) base).getObject());
+        }
+        byte[] digest = digests.get(base);
+        if (digest != null) {
+            return digest;
+        }
+        if (!visiting.add(base)) {
+            // objects that reference themselves are not shared
+            return CYCLE;
+        }
+        try {
+            MessageDigest md = newDigest();
+            boolean cycle = update(md, base);
+            digest = cycle ? CYCLE : md.digest();
+            digests.put(base, digest);
+            return digest;
+        } finally {
+            visiting.remove(base);
+        }
+    }
+
+    /**
+     * @return true if the object references itself
+     */
+    private boolean update(MessageDigest md, COSBase base) throws IOException {
+        boolean cycle = false;
+        if (base instanceof COSDictionary) {
+            COSDictionary dictionary = (COSDictionary) base;
+            md.update(base instanceof COSStream ? (byte) 's' : (byte) 'd');
+            List<COSName> keys = new ArrayList<>(dictionary.keySet());
+            keys.sort(null);
+            for (COSName key : keys) {
+                if (COSName.LENGTH.equals(key)) {
+                    // the encoded bytes are compared instead
+                    continue;
+                }
+                COSBase value = dictionary.getDictionaryObject(key);
+                if (value instanceof COSStream) {
+                    share(dictionary, key, value);
+                    value = dictionary.getDictionaryObject(key);
+                }
+                byte[] digest = value != null ? digest(value) : new byte[0];
+                cycle |= digest == CYCLE;
+                md.update(key.getName().getBytes(StandardCharsets.UTF_8));
+                md.update(digest);
+            }
+            if (base instanceof COSStream) {
+                byte[] buffer = new byte[8192];
+                try (InputStream is = ((COSStream) base).createRawInputStream()) {
+                    int read;
+                    while ((read = is.read(buffer)) != -1) {
+                        md.update(buffer, 0, read);
+                    }
+                }
+            }
+        } else if (base instanceof COSArray) {
+            md.update((byte) 'a');
+            for (COSBase item : (COSArray) base) {
+                byte[] digest = item != null ? digest(item) : new byte[0];
+                cycle |= digest == CYCLE;
+                md.update(digest);
+            }
+        } else if (base instanceof COSName) {
+            md.update((byte) 'n');
+            md.update(((COSName) base).getName().getBytes(StandardCharsets.UTF_8));
+        } else if (base instanceof COSString) {
+            md.update((byte) 't');
+            md.update(((COSString) base).getBytes());
+        } else if (base instanceof COSInteger) {
+            md.update((byte) 'i');
+            md.update(Long.toString(((COSInteger) base).longValue()).getBytes(StandardCharsets.UTF_8));
+        } else if (base instanceof COSFloat) {
+            md.update((byte) 'f');
+            md.update(Float.toString(((COSFloat) base).floatValue()).getBytes(StandardCharsets.UTF_8));
+        } else if (base instanceof COSBoolean) {
+            md.update(((COSBoolean) base).getValue() ? (byte) 'T' : (byte) 'F');
+        } else {
+            md.update((byte) '0');
+        }
+        return cycle;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the PDF files already generated and uploaded, keyed by the content that produced them.
+ * <p>
+ * The key is the SHA-256 of the rendered HTML, the settings of the document and the renderer
+ * version, so a request that would produce exactly the same document reuses the uploaded file
+ * instead of rendering it again. The index keeps a bounded number of entries in LRU order and
+ * entries expire after the TTL, so files removed by the app stop being returned.
+ */
+public class ResultCache {
+
+    private static Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+    public static final long DEFAULT_TTL = 60L * 60 * 1000;
+
+    private static volatile ResultCache instance;
+
+    private final int maxEntries;
+    private final long ttl;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ResultCache(int maxEntries, long ttl) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+    }
+
+    public static ResultCache getInstance() {
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * Enables the shared result cache.
+     *
+     * @param maxEntries number of documents kept in the index, 0 disables the cache
+     * @param ttl        milliseconds a generated file is reused
+     */
+    public static void configure(int maxEntries, long ttl) {
+        instance = maxEntries > 0 ? new ResultCache(maxEntries, ttl) : null;
+        if (maxEntries > 0) {
+            logger.info(String.format("Result cache enabled with [%s] entries and TTL [%s] ms", maxEntries, ttl));
+        }
+    }
+
+    /**
+     * Builds the key of a document.
+     *
+     * @param html          rendered HTML of the document
+     * @param settings      settings of the document, including header and footer
+     * @param engineVersion version of the renderer
+     * @return the key
+     */
+    public static String key(String html, Json settings, String engineVersion) {
+        StringBuilder sb = new StringBuilder(html.length() + 256);
+        sb.append(engineVersion).append('\n');
+        sb.append(settings != null ? settings.toString() : "{}").append('\n');
+        sb.append(html);
+        return PdfFilesUtils.sha256(sb.toString());
+    }
+
+    /**
+     * Returns the uploaded file for the key, or null if the document was not generated or expired.
+     */
+    public Json get(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.currentTimeMillis() - entry.createdAt < ttl) {
+                    hits.incrementAndGet();
+                    return entry.file;
+                }
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, Json file) {
+        if (file == null) {
+            return;
+        }
+        synchronized (this) {
+            entries.put(key, new Entry(file));
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public Json getStats() {
+        long total = hits.get() + misses.get();
+        Json stats = Json.map();
+        synchronized (this) {
+            stats.set("entries", entries.size());
+        }
+        stats.set("hits", hits.get());
+        stats.set("misses", misses.get());
+        stats.set("hitRate", total > 0 ? (double) hits.get() / total : 0d);
+        stats.set("evictions", evictions.get());
+        return stats;
+    }
+
+    private static class Entry {
+
+        private final Json file;
+        private final long createdAt;
+
+        private Entry(Json file) {
+            this.file = file;
+            this.createdAt = System.currentTimeMillis();
+        }
+    }
+}
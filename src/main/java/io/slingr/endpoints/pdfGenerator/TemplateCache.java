@@ -0,0 +1,86 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared FreeMarker configuration with a bounded LRU cache of compiled templates.
+ * <p>
+ * Templates are keyed by the SHA-256 of their source, so the same template sent by
+ * different requests is parsed only once. Compiled templates are thread safe and
+ * can be processed concurrently by several render workers.
+ */
+public class TemplateCache {
+
+    private static final int MAX_TEMPLATES = 200;
+
+    private static final TemplateCache instance = new TemplateCache(MAX_TEMPLATES);
+
+    private final Configuration configuration;
+    private final Map<String, Template> templates;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public static TemplateCache getInstance() {
+        return instance;
+    }
+
+    TemplateCache(final int maxTemplates) {
+        // same incompatible improvements level used by the deprecated no-arg constructor
+        this.configuration = new Configuration(Configuration.VERSION_2_3_0);
+        this.templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > maxTemplates;
+            }
+        };
+    }
+
+    public Template getTemplate(String source) throws IOException {
+        String key = PdfFilesUtils.sha256(source);
+        Template template;
+        synchronized (templates) {
+            template = templates.get(key);
+        }
+        if (template != null) {
+            hits.incrementAndGet();
+            return template;
+        }
+        misses.incrementAndGet();
+        template = new Template("name", new StringReader(source), configuration);
+        template.setAutoFlush(true);
+        synchronized (templates) {
+            templates.put(key, template);
+        }
+        return template;
+    }
+
+    public String process(String source, Map<String, Object> data) throws IOException, TemplateException {
+        Template template = getTemplate(source);
+        StringWriter sw = new StringWriter(source.length());
+        template.process(data, sw);
+        return sw.toString();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.services.Files;
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads generated files to the file service, retrying failed uploads with exponential backoff and
+ * jitter.
+ * <p>
+ * Uploads always read from a file already written to disk, so a retry sends the same artifact again
+ * instead of generating it again, and a flaky file service does not multiply the render load. Uploads
+ * run in their own pool and retries are scheduled instead of sleeping, so a worker that hands off a
+ * file with {@link #upload} is free to render the next document. The caller keeps the file until the
+ * returned future completes.
+ * <p>
+ * Returned futures are completed from a separate pool, so what callers do when an upload ends, like
+ * sending events to the app, does not hold the threads that upload the next files.
+ */
+public class UploadStage {
+
+    private static Logger logger = LoggerFactory.getLogger(UploadStage.class);
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    public static final long DEFAULT_INITIAL_BACKOFF = 500;
+    public static final long DEFAULT_MAX_BACKOFF = 10L * 1000;
+    private static final int DEFAULT_THREADS = 3;
+    private static final int COMPLETION_THREADS = 4;
+
+    private static final AtomicInteger completionThreads = new AtomicInteger();
+
+    private static final ExecutorService completionExecutor = Executors.newFixedThreadPool(COMPLETION_THREADS, r -> {
+        Thread thread = new Thread(r, "pdf-upload-completion-" + completionThreads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile UploadStage instance = new UploadStage(DEFAULT_THREADS, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService retryScheduler;
+
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    UploadStage(int threads, int maxAttempts, long initialBackoff, long maxBackoff) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        AtomicInteger counter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "pdf-upload-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pdf-upload-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static UploadStage getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replaces the shared upload stage.
+     *
+     * @param threads        uploads sent at the same time
+     * @param maxAttempts    attempts of each upload, including the first one
+     * @param initialBackoff milliseconds before the first retry, doubled on each retry
+     * @param maxBackoff     maximum milliseconds between retries
+     */
+    public static void configure(int threads, int maxAttempts, long initialBackoff, long maxBackoff) {
+        UploadStage previous = instance;
+        instance = new UploadStage(threads, maxAttempts, initialBackoff, maxBackoff);
+        previous.shutdown();
+        logger.info(String.format("Uploads use [%s] threads and up to [%s] attempts", threads, maxAttempts));
+    }
+
+    /**
+     * Uploads a file in background.
+     *
+     * @param files       file service
+     * @param name        name of the uploaded file
+     * @param file        file to upload, that must not be removed until the future completes
+     * @param contentType content type of the file
+     * @return future with the uploaded file, or failed with the error of the last attempt. Actions that
+     * depend on it run in the completion pool, not in the upload threads.
+     */
+    public CompletableFuture<Json> upload(Files files, String name, File file, String contentType) {
+        CompletableFuture<Json> future = new CompletableFuture<>();
+        executorService.execute(() -> attempt(files, name, file, contentType, 1, future));
+        CompletableFuture<Json> completion = new CompletableFuture<>();
+        future.whenComplete((fileJson, ex) -> completionExecutor.execute(() -> {
+            if (ex != null) {
+                completion.completeExceptionally(ex);
+            } else {
+                completion.complete(fileJson);
+            }
+        }));
+        return completion;
+    }
+
+    /**
+     * Uploads a file and waits until it is done, for jobs that need the uploaded file to continue.
+     *
+     * @see #upload(Files, String, File, String)
+     */
+    public Json uploadAndWait(Files files, String name, File file, String contentType) throws IOException {
+        return await(upload(files, name, file, contentType));
+    }
+
+    /**
+     * Waits for an upload started with {@link #upload}.
+     */
+    public static Json await(CompletableFuture<Json> upload) throws IOException {
+        try {
+            return upload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("File can not be uploaded", e.getCause());
+        }
+    }
+
+    private void attempt(Files files, String name, File file, String contentType, int attempt, CompletableFuture<Json> future) {
+        try (InputStream is = java.nio.file.Files.newInputStream(file.toPath())) {
+            Json fileJson = files.upload(name, is, contentType);
+            uploads.incrementAndGet();
+            future.complete(fileJson);
+        } catch (Exception e) {
+            if (attempt >= maxAttempts) {
+                failures.incrementAndGet();
+                logger.error(String.format("File [%s] could not be uploaded after [%s] attempts", name, attempt), e);
+                future.completeExceptionally(new IOException(String.format("File could not be uploaded after %s attempts: %s", attempt, e.getMessage()), e));
+                return;
+            }
+            long delay = backoff(attempt);
+            retries.incrementAndGet();
+            logger.warn(String.format("Upload of file [%s] failed on attempt [%s], retrying in [%s] ms: %s", name, attempt, delay, e.getMessage()));
+            try {
+                retryScheduler.schedule(() -> executorService.execute(() -> attempt(files, name, file, contentType, attempt + 1, future)),
+                        delay, TimeUnit.MILLISECONDS);
+            } catch (Exception ex) {
+                future.completeExceptionally(new IOException("Upload retry can not be scheduled", e));
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff with equal jitter, so uploads that failed at the same time do not retry at the same time.
+     */
+    long backoff(int attempt) {
+        long base = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 20));
+        return base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+    }
+
+    private void shutdown() {
+        retryScheduler.shutdown();
+        executorService.shutdown();
+    }
+
+    public long getUploads() {
+        return uploads.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,148 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders documents with the bundled {@code wkhtmltopdf} binary.
+ * <p>
+ * Without renderer pool the HTML is piped to a new process and the returned stream reads the PDF
+ * directly from it, so no temporary files are written for the document itself. The pool works
+ * with files, so in that case the HTML and PDF are written to the job workspace.
+ */
+public class WkhtmltopdfEngine implements RenderEngine {
+
+    private static Logger logger = LoggerFactory.getLogger(WkhtmltopdfEngine.class);
+
+    public static final String NAME = "wkhtmltopdf";
+
+    private volatile String version;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Version reported by wkhtmltopdf, read once.
+     */
+    @Override
+    public String getVersion() {
+        String current = version;
+        if (current == null) {
+            current = NAME;
+            try {
+                Process process = new ProcessBuilder(PdfEngine.WKHTMLTOPDF, "--version").redirectErrorStream(true).start();
+                try (InputStream in = process.getInputStream()) {
+                    String output = IOUtils.toString(in, "UTF-8").trim();
+                    if (StringUtils.isNotBlank(output)) {
+                        current = output;
+                    }
+                }
+                process.waitFor();
+            } catch (Exception e) {
+                logger.warn("Can not read wkhtmltopdf version", e);
+            }
+            version = current;
+        }
+        return current;
+    }
+
+    @Override
+    public InputStream render(RenderJob job) throws IOException {
+        List<String> commandParams = buildCommand(job);
+        if (!RendererPool.isEnabled()) {
+            return PipedRenderer.render(commandParams, job.getHtml(), job.getTimeout());
+        }
+        File temp = job.getWorkspace().createFile("pdf-wkhtmltopdf-", ".html");
+        FileUtils.writeStringToFile(temp, job.getHtml(), "UTF-8");
+        File target = new File(temp.getAbsolutePath().replaceAll("\\.html", ".pdf"));
+        commandParams.add(temp.getAbsolutePath());
+        commandParams.add(target.getAbsolutePath());
+        return renderInPool(commandParams, target, job.getTimeout());
+    }
+
+    private List<String> buildCommand(RenderJob job) throws IOException {
+        Json settings = job.getSettings();
+        List<String> commandParams = new ArrayList<>();
+        commandParams.add(PdfEngine.WKHTMLTOPDF);
+
+        addFileCommandParams(commandParams, job, job.getHeaderHtml(), "--header-html");
+        addFileCommandParams(commandParams, job, job.getFooterHtml(), "--footer-html");
+
+        String pageSize = settings.string("pageSize");
+        if (StringUtils.isBlank(pageSize)) {
+            pageSize = "A4";
+        }
+        commandParams.add("--page-size");
+        commandParams.add(pageSize);
+
+        if (job.isDownloadImages()) {
+            commandParams.add("--enable-local-file-access");
+        }
+
+        String orientation = settings.string("orientation");
+        if (StringUtils.isNotBlank(orientation) && orientation.toLowerCase().equals("landscape")) {
+            commandParams.add("--orientation");
+            commandParams.add("Landscape");
+        }
+
+        Integer marginBottom = settings.integer("marginBottom");
+        if (marginBottom != null) {
+            commandParams.add("--margin-bottom");
+            commandParams.add(Integer.toString(marginBottom));
+        }
+
+        Integer marginLeft = settings.integer("marginLeft");
+        if (marginLeft != null) {
+            commandParams.add("--margin-left");
+            commandParams.add(Integer.toString(marginLeft));
+        }
+
+        Integer marginRight = settings.integer("marginRight");
+        if (marginRight != null) {
+            commandParams.add("--margin-right");
+            commandParams.add(Integer.toString(marginRight));
+        }
+
+        Integer marginTop = settings.integer("marginTop");
+        if (marginTop != null) {
+            commandParams.add("--margin-top");
+            commandParams.add(Integer.toString(marginTop));
+        }
+        return commandParams;
+    }
+
+    private void addFileCommandParams(List<String> commandParams, RenderJob job, String html, String command) throws IOException {
+        if (html != null) {
+            File temp = job.getWorkspace().createFile("pdf-header-", ".html");
+            FileUtils.writeStringToFile(temp, html, "UTF-8");
+            commandParams.add(command);
+            commandParams.add(temp.getAbsolutePath());
+        }
+    }
+
+    private InputStream renderInPool(List<String> commandParams, File target, long timeout) throws IOException {
+        try {
+            List<String> args = commandParams.subList(1, commandParams.size());
+            if (RendererPool.getInstance().render(args, target, timeout)) {
+                return FileUtils.openInputStream(target);
+            }
+            logger.warn(String.format("Renderer pool could not generate file [%s]", target));
+        } catch (InterruptedException e) {
+            logger.info("Render was interrupted");
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
@@ -1,5 +1,6 @@
 package io.slingr.endpoints.pdfGenerator.workers;
 
+import io.slingr.endpoints.pdfGenerator.DocumentLoader;
 import io.slingr.endpoints.pdfGenerator.PdfFilesUtils;
 import io.slingr.endpoints.services.AppLogs;
 import io.slingr.endpoints.services.Events;
@@ -17,11 +18,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
-import java.util.UUID;
 
 public class AddImagesWorker extends PdfImageWorker {
 
@@ -33,17 +32,16 @@ public class AddImagesWorker extends PdfImageWorker {
 
 
     @Override
-    public void run() {
+    protected void process() {
 
         Json data = request.getJsonParams();
 
-        String requestId = request.getFunctionId();
         String fileId = data.string("fileId");
         Json res = Json.map();
 
         try {
-            InputStream is = files.download(fileId).getFile();
-            PDDocument pdf = PDDocument.load(is);
+            InputStream is = download(fileId).getFile();
+            PDDocument pdf = DocumentLoader.load(is, workspace);
 
             Json settings = data.json("settings");
 
@@ -61,7 +59,7 @@ public class AddImagesWorker extends PdfImageWorker {
 
                             PDPage page = pdf.getPage(pageIndex);
 
-                            DownloadedFile downloadedFile = files.download(imageId);
+                            DownloadedFile downloadedFile = download(imageId);
                             InputStream imageIs = downloadedFile.getFile();
 
                             Json imageMetadata = files.metadata(imageId);
@@ -70,7 +68,7 @@ public class AddImagesWorker extends PdfImageWorker {
                                 extension = ".png";
                             }
 
-                            File img = File.createTempFile("pdf-img-" + UUID.randomUUID(), extension);
+                            File img = workspace.createFile("pdf-img-", extension);
                             copyInputStreamToFile(imageIs, img);
 
                             PDImageXObject pdImage = PDImageXObject.createFromFileByContent(img, pdf);
@@ -107,23 +105,23 @@ public class AddImagesWorker extends PdfImageWorker {
             }
 
             String fileName = PdfFilesUtils.getFileName("pdf", settings);
-            File temp = File.createTempFile(fileName, ".pdf");
+            File temp = workspace.createFile(fileName, ".pdf");
             pdf.save(temp);
             pdf.close();
 
-            Json fileJson = files.upload(fileName, new FileInputStream(temp), "application/pdf");
+            Json fileJson = upload(fileName, temp);
 
             res.set("status", "ok");
             res.set("file", fileJson);
 
-            events.send("pdfResponse", res, requestId);
+            sendResponse(res);
         } catch (IOException e) {
 
             appLogger.info("Can not generate PDF, I/O exception", e);
             res.set("status", "error");
             res.set("message", "Failed to create file");
 
-            events.send("pdfResponse", res, requestId);
+            sendResponse(res);
         }
 
     }
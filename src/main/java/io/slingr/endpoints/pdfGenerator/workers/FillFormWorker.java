@@ -11,9 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 
 public class FillFormWorker extends PdfWorker {
 
@@ -25,7 +23,7 @@ public class FillFormWorker extends PdfWorker {
     }
 
     @Override
-    public void run() {
+    protected void process() {
         fillForm(this.request);
     }
 
@@ -39,31 +37,31 @@ public class FillFormWorker extends PdfWorker {
             return;
         }
         Json res = Json.map();
-        InputStream tmpIs = null;
         File temp = null;
         try {
 
             if (data.contains("settings")) {
                 Json settings = data.json("settings");
 
-                temp = pdfFillForm.fillForm(files, fileId, settings);
+                temp = pdfFillForm.fillForm(files, workspace, fileId, settings);
                 if (temp == null) {
                     appLogger.info("Can not generate filled form. Contact the support.");
+                    res.set("status", "error");
+                    res.set("message", "Failed to fill form");
+                    sendResponse(res);
                     return;
                 }
 
                 String fileName = PdfFilesUtils.getFileName("pdf", settings);
                 appLogger.info(String.format("Uploading generated file [%s]", fileName));
-                tmpIs = new FileInputStream(temp);
-
-                Json fileJson = files.upload(fileName, tmpIs, "application/pdf");
+                Json fileJson = upload(fileName, temp);
 
                 res.set("status", "ok");
                 res.set("file", fileJson);
 
-                events.send("pdfResponse", res, request.getFunctionId());
+                sendResponse(res);
             } else {
-                events.send("pdfResponse", res, request.getFunctionId());
+                sendResponse(res);
             }
         } catch (IOException e) {
 
@@ -72,18 +70,7 @@ public class FillFormWorker extends PdfWorker {
             res.set("status", "error");
             res.set("message", "Failed to create file");
 
-            events.send("pdfResponse", res, request.getFunctionId());
-        } finally {
-            try {
-                if (tmpIs != null) {
-                    tmpIs.close();
-                }
-                if (temp != null) {
-                    temp.delete();
-                }
-            } catch (IOException ioe) {
-                logger.error("Can not close temporal to generate file", ioe.getMessage());
-            }
+            sendResponse(res);
         }
     }
 }
@@ -1,9 +1,11 @@
 package io.slingr.endpoints.pdfGenerator.workers;
 
+import io.slingr.endpoints.pdfGenerator.DocumentLoader;
+import io.slingr.endpoints.pdfGenerator.Prefetcher;
+import io.slingr.endpoints.pdfGenerator.ResourceDeduplicator;
 import io.slingr.endpoints.services.AppLogs;
 import io.slingr.endpoints.services.Events;
 import io.slingr.endpoints.services.Files;
-import io.slingr.endpoints.services.rest.DownloadedFile;
 import io.slingr.endpoints.utils.Json;
 import io.slingr.endpoints.ws.exchange.FunctionRequest;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
@@ -13,9 +15,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MergeDocumentsWorker extends PdfWorker {
@@ -27,13 +28,18 @@ public class MergeDocumentsWorker extends PdfWorker {
     }
 
     @Override
-    public void run() {
+    protected void process() {
 
         Json data = request.getJsonParams();
         Json docs = null;
+        Json settings = null;
         if (data != null && data.contains("documents")) {
             docs = data.json("documents");
         }
+        if (data != null && data.contains("settings")) {
+            settings = data.json("settings");
+        }
+        boolean deduplicate = settings != null && Boolean.TRUE.equals(settings.bool("deduplicate"));
 
         if (docs != null && docs.isList()) {
 
@@ -42,81 +48,96 @@ public class MergeDocumentsWorker extends PdfWorker {
             File temp;
             PDDocument newDocument;
 
-            boolean isError = false;
-            String errorMessage = null;
+            List<Json> documents = new ArrayList<>();
+            List<String> fileIds = new ArrayList<>();
+            for (Object d : docs.objects()) {
+                Json doc = (Json) d;
+                documents.add(doc);
+                fileIds.add(doc.string("file"));
+            }
 
-            try {
+            // documents are downloaded in background while the previous ones are merged
+            try (Prefetcher prefetcher = new Prefetcher(files, getFunctionName(), workspace, fileIds)) {
 
-                PDFMergerUtility merger = new PDFMergerUtility();
-                Splitter splitter = new Splitter();
-                newDocument = new PDDocument();
-
-                for (Object d : docs.objects()) {
-
-                    Json doc = (Json) d;
-
-                    String fileId = doc.string("file");
-                    DownloadedFile downloadedFile = files.download(fileId);
-                    InputStream is = downloadedFile.getFile();
-
-                    PDDocument pdf = PDDocument.load(is);
-                    List<PDDocument> splitDoc = splitter.split(pdf);
-
-                    if (splitDoc.size() >= 0) {
-                        int i = 1;
-                        for (PDDocument page : splitDoc) {
-
-                            if ((doc.is("start") && doc.is("end") && i >= doc.integer("start") && i <= doc.integer("end"))
-                                    || (doc.is("start") && !doc.is("end") && i >= doc.integer("start"))
-                                    || (!doc.is("start") && doc.is("end") && i <= doc.integer("end"))
-                                    || (!doc.is("start") && !doc.is("end"))
-                            ) {
-                                merger.appendDocument(newDocument, page);
-                            }
-                            page.close();
-                            i++;
-                        }
-                    } else {
-                        for (PDDocument page : splitDoc) {
-                            page.close();
-                        }
-                        isError = true;
-                        errorMessage = "Start should be smaller than end.";
-                        logger.info(errorMessage);
-                    }
+                newDocument = DocumentLoader.create(workspace);
 
-                    splitDoc.clear();
-                    is.close();
-                    pdf.close();
+                for (Json doc : documents) {
+                    try (PDDocument pdf = DocumentLoader.load(prefetcher.next(), workspace)) {
+                        appendPages(newDocument, pdf, doc);
+                    }
+                }
 
+                ResourceDeduplicator deduplicator = null;
+                if (deduplicate) {
+                    deduplicator = new ResourceDeduplicator();
+                    deduplicator.deduplicate(newDocument);
                 }
 
-                temp = File.createTempFile("merged-doc-", ".pdf");
+                temp = workspace.createFile("merged-doc-", ".pdf");
                 newDocument.save(temp);
 
                 newDocument.close();
-                Json fileJson = files.upload(temp.getName(), new FileInputStream(temp), "application/pdf");
-
-                if (!isError) {
-                    res.set("status", "ok");
-                    res.set("file", fileJson);
-                } else {
-                    res.set("status", "error");
-                    res.set("message", errorMessage);
+                Json fileJson = upload(temp.getName(), temp);
+
+                res.set("status", "ok");
+                res.set("file", fileJson);
+                if (deduplicator != null) {
+                    // the size before is the size of the file plus the streams that were not written
+                    Json deduplication = Json.map();
+                    deduplication.set("replacedObjects", deduplicator.getReplacedObjects());
+                    deduplication.set("sizeBefore", temp.length() + deduplicator.getRemovedBytes());
+                    deduplication.set("sizeAfter", temp.length());
+                    res.set("deduplication", deduplication);
+                    logger.info(String.format("Merged file size reduced from [%s] to [%s] bytes sharing [%s] objects",
+                            temp.length() + deduplicator.getRemovedBytes(), temp.length(), deduplicator.getReplacedObjects()));
                 }
 
-                events.send("pdfResponse", res, request.getFunctionId());
+                sendResponse(res);
 
             } catch (IOException e) {
                 logger.info("Error to create merged file. " + e.getMessage());
+                res.set("status", "error");
+                res.set("message", "Failed to create file");
+                sendResponse(res);
             }
 
         } else {
             Json res = Json.map();
             res.set("status", "error");
             res.set("message", "The property documents should be a valid list.");
-            events.send("pdfResponse", res, request.getFunctionId());
+            sendResponse(res);
         }
 
     }
+
+    /**
+     * Appends the pages of the source document in the range of the document settings to the target document.
+     * <p>
+     * The pages of the range are taken as a single document, so the target gets them with one copy of the
+     * resources they share, like fonts and images, and pages out of the range are not copied at all.
+     *
+     * @param target document being merged
+     * @param source document to append
+     * @param doc    settings of the document, with optional {@code start} and {@code end} pages starting at 1
+     */
+    public static void appendPages(PDDocument target, PDDocument source, Json doc) throws IOException {
+        int first = doc.is("start") ? Math.max(1, doc.integer("start")) : 1;
+        int last = doc.is("end") ? Math.min(source.getNumberOfPages(), doc.integer("end")) : source.getNumberOfPages();
+        if (first > last) {
+            return;
+        }
+        Splitter splitter = new Splitter();
+        splitter.setStartPage(first);
+        splitter.setEndPage(last);
+        splitter.setSplitAtPage(last - first + 1);
+
+        PDFMergerUtility merger = new PDFMergerUtility();
+        for (PDDocument range : splitter.split(source)) {
+            try {
+                merger.appendDocument(target, range);
+            } finally {
+                range.close();
+            }
+        }
+    }
 }
@@ -15,7 +15,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.UUID;
 
 public abstract class PdfImageWorker extends PdfWorker {
 
@@ -52,8 +51,8 @@ public abstract class PdfImageWorker extends PdfWorker {
                     extension = ".png";
                 }
 
-                InputStream imageIs = files.download(imageId).getFile();
-                File img = File.createTempFile("pdf-img-" + UUID.randomUUID(), extension);
+                InputStream imageIs = download(imageId).getFile();
+                File img = workspace.createFile("pdf-img-", extension);
                 copyInputStreamToFile(imageIs, img);
 
                 PDResources resources = pdf.getPage(0).getResources();
@@ -1,17 +1,26 @@
 package io.slingr.endpoints.pdfGenerator.workers;
 
+import io.slingr.endpoints.pdfGenerator.JobWorkspace;
+import io.slingr.endpoints.pdfGenerator.Metrics;
 import io.slingr.endpoints.pdfGenerator.PdfFillForm;
+import io.slingr.endpoints.pdfGenerator.UploadStage;
 import io.slingr.endpoints.services.AppLogs;
 import io.slingr.endpoints.services.Events;
 import io.slingr.endpoints.services.Files;
+import io.slingr.endpoints.services.rest.DownloadedFile;
+import io.slingr.endpoints.utils.Json;
 import io.slingr.endpoints.ws.exchange.FunctionRequest;
 
+import java.io.File;
+import java.io.IOException;
+
 public abstract class PdfWorker implements Runnable {
     protected Events events;
     protected Files files;
     protected PdfFillForm pdfFillForm;
     protected AppLogs appLogger;
     protected FunctionRequest request;
+    protected JobWorkspace workspace;
 
     PdfWorker(Events events, Files files, AppLogs appLogger, FunctionRequest request) {
         this.events = events;
@@ -19,4 +28,59 @@ public abstract class PdfWorker implements Runnable {
         this.appLogger = appLogger;
         this.request = request;
     }
+
+    /**
+     * Runs the worker inside its own workspace, which is removed with all its files when the worker ends.
+     * Unexpected errors, like files that can not be downloaded, are sent to the app as an error response
+     * so it does not wait for a response that never comes.
+     */
+    @Override
+    public void run() {
+        try (JobWorkspace workspace = JobWorkspace.create(getClass().getSimpleName())) {
+            this.workspace = workspace;
+            process();
+        } catch (IOException e) {
+            appLogger.error("Can not create temporal workspace", e);
+            Json res = Json.map();
+            res.set("status", "error");
+            res.set("message", "Failed to create file");
+            sendResponse(res);
+        } catch (RuntimeException e) {
+            appLogger.error(String.format("Failed to process [%s] request", getFunctionName()), e);
+            Json res = Json.map();
+            res.set("status", "error");
+            res.set("message", "Failed to process the request: " + e.getMessage());
+            sendResponse(res);
+        }
+    }
+
+    protected abstract void process();
+
+    /**
+     * Name of the function of the worker, used for metrics. For example {@code mergeDocuments} for
+     * {@code MergeDocumentsWorker}.
+     */
+    public String getFunctionName() {
+        String name = getClass().getSimpleName().replaceAll("Worker$", "");
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    protected DownloadedFile download(String fileId) {
+        try (Metrics.Timer timer = Metrics.getInstance().time(getFunctionName(), Metrics.DOWNLOAD)) {
+            return files.download(fileId);
+        }
+    }
+
+    protected Json upload(String fileName, File file) throws IOException {
+        try (Metrics.Timer timer = Metrics.getInstance().time(getFunctionName(), Metrics.UPLOAD)) {
+            return UploadStage.getInstance().uploadAndWait(files, fileName, file, "application/pdf");
+        }
+    }
+
+    protected void sendResponse(Json res) {
+        Metrics.getInstance().response(getFunctionName(), res);
+        try (Metrics.Timer timer = Metrics.getInstance().time(getFunctionName(), Metrics.EVENT)) {
+            events.send("pdfResponse", res, request.getFunctionId());
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package io.slingr.endpoints.pdfGenerator.workers;
 
+import io.slingr.endpoints.pdfGenerator.Metrics;
 import io.slingr.endpoints.pdfGenerator.PdfHeaderFooterHandler;
 import io.slingr.endpoints.services.AppLogs;
 import io.slingr.endpoints.services.Events;
@@ -11,7 +12,7 @@ import io.slingr.endpoints.ws.exchange.FunctionRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -27,71 +28,77 @@ public class ReplaceHeaderAndFooterWorker extends PdfWorker {
     }
 
     @Override
-    public void run() {
+    protected void process() {
 
         Json body = request.getJsonParams();
 
         String generatedFilePath = null;
-        PdfHeaderFooterHandler handler = new PdfHeaderFooterHandler();
+        PdfHeaderFooterHandler handler = new PdfHeaderFooterHandler(workspace);
 
         Json settings = body.json("settings");
         Json header = settings.json("header");
         Json footer = settings.json("footer");
 
-        DownloadedFile pdf = files.download(body.string("fileId"));
+        DownloadedFile pdf = download(body.string("fileId"));
 
         if (header != null && header.string(IMAGE_ID) != null || footer != null && footer.string(IMAGE_ID) != null) {
 
             InputStream headerIs = null;
             if (header.string(IMAGE_ID) != null) {
-                headerIs = files.download(header.string(IMAGE_ID)).getFile();
+                headerIs = download(header.string(IMAGE_ID)).getFile();
             }
 
             InputStream footerIs = null;
             if (footer.string(IMAGE_ID) != null) {
-                footerIs = files.download(footer.string(IMAGE_ID)).getFile();
+                footerIs = download(footer.string(IMAGE_ID)).getFile();
             }
 
-            generatedFilePath = handler.replaceHeaderAndFooterFromImages(pdf.getFile(), headerIs, footerIs, settings);
+            try (Metrics.Timer timer = Metrics.getInstance().time(getFunctionName(), Metrics.RENDER)) {
+                generatedFilePath = handler.replaceHeaderAndFooterFromImages(pdf.getFile(), headerIs, footerIs, settings);
+            }
 
         } else if (header != null && header.string(HTML) != null || footer != null && footer.string(HTML) != null) {
-            generatedFilePath = handler.replaceHeaderAndFooterFromTemplate(pdf.getFile(), settings);
+            try (Metrics.Timer timer = Metrics.getInstance().time(getFunctionName(), Metrics.RENDER)) {
+                generatedFilePath = handler.replaceHeaderAndFooterFromTemplate(pdf.getFile(), settings);
+            }
         }
 
         if (generatedFilePath != null) {
 
-            InputStream is = null;
-
             try {
-                is = new FileInputStream(generatedFilePath);
-                Json fileJson = files.upload("new-file-" + Strings.randomUUIDString(), is, "application/pdf");
+                Json fileJson = upload("new-file-" + Strings.randomUUIDString(), new File(generatedFilePath));
                 handler.cleanGeneratedFiles();
 
                 Json res = Json.map();
                 res.set("status", "ok");
                 res.set("file", fileJson);
 
-                events.send("pdfResponse", res, request.getFunctionId());
+                sendResponse(res);
 
             } catch (IOException ioe) {
                 logger.warn("Can not get generated file");
-            } finally {
-                try {
-                    if (is != null) {
-                        is.close();
-                    }
-                } catch (IOException ioe) {
-                    logger.error("Can not close temporal to generate file", ioe.getMessage());
-                }
+                Json res = Json.map();
+                res.set("status", "error");
+                res.set("message", "Failed to create file");
+                sendResponse(res);
             }
 
+        } else if (handler.isTimedOut()) {
+
+            Json res = Json.map();
+            res.set("status", "error");
+            res.set("timeout", true);
+            res.set("message", "Header or footer could not be rendered in time");
+
+            sendResponse(res);
+
         } else {
 
             Json res = Json.map();
             res.set("status", "error");
             res.set("message", "Should set images or templates for header and footer");
 
-            events.send("pdfResponse", res, request.getFunctionId());
+            sendResponse(res);
         }
 
     }
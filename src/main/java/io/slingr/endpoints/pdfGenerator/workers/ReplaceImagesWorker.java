@@ -1,5 +1,6 @@
 package io.slingr.endpoints.pdfGenerator.workers;
 
+import io.slingr.endpoints.pdfGenerator.DocumentLoader;
 import io.slingr.endpoints.pdfGenerator.PdfFilesUtils;
 import io.slingr.endpoints.services.AppLogs;
 import io.slingr.endpoints.services.Events;
@@ -11,10 +12,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Date;
 import java.util.List;
 
 public class ReplaceImagesWorker extends PdfImageWorker {
@@ -26,19 +25,18 @@ public class ReplaceImagesWorker extends PdfImageWorker {
     }
 
     @Override
-    public void run() {
+    protected void process() {
 
         Json data = request.getJsonParams();
 
-        String requestId = request.getFunctionId();
         String fileId = data.string("fileId");
         Json res = Json.map();
         try {
 
             if (data.contains("settings")) {
 
-                InputStream is = files.download(fileId).getFile();
-                PDDocument pdf = PDDocument.load(is);
+                InputStream is = download(fileId).getFile();
+                PDDocument pdf = DocumentLoader.load(is, workspace);
 
                 Json settings = data.json("settings");
 
@@ -53,19 +51,19 @@ public class ReplaceImagesWorker extends PdfImageWorker {
                     }
                 }
 
-                File temp = File.createTempFile("pdf-images-" + new Date().getTime(), ".pdf");
+                File temp = workspace.createFile("pdf-images-", ".pdf");
                 pdf.save(temp);
                 pdf.close();
 
                 String fileName = PdfFilesUtils.getFileName("pdf", settings);
-                Json fileJson = files.upload(fileName, new FileInputStream(temp), "application/pdf");
+                Json fileJson = upload(fileName, temp);
 
                 res.set("status", "ok");
                 res.set("file", fileJson);
 
-                events.send("pdfResponse", res, requestId);
+                sendResponse(res);
             } else {
-                events.send("pdfResponse", res, requestId);
+                sendResponse(res);
             }
 
         } catch (IOException e) {
@@ -75,7 +73,7 @@ public class ReplaceImagesWorker extends PdfImageWorker {
             res.set("status", "error");
             res.set("message", "Failed to create file");
 
-            events.send("pdfResponse", res, requestId);
+            sendResponse(res);
         }
 
     }
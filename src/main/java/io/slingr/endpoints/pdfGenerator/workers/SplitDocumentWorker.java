@@ -2,24 +2,29 @@ package io.slingr.endpoints.pdfGenerator.workers;
 
 import io.slingr.endpoints.exceptions.EndpointException;
 import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.pdfGenerator.DocumentLoader;
+import io.slingr.endpoints.pdfGenerator.JobWorkspace;
+import io.slingr.endpoints.pdfGenerator.Metrics;
+import io.slingr.endpoints.pdfGenerator.UploadStage;
 import io.slingr.endpoints.services.AppLogs;
 import io.slingr.endpoints.services.Events;
 import io.slingr.endpoints.services.Files;
 import io.slingr.endpoints.utils.Json;
 import io.slingr.endpoints.ws.exchange.FunctionRequest;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.multipdf.Splitter;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 
 public class SplitDocumentWorker extends PdfWorker {
@@ -31,7 +36,7 @@ public class SplitDocumentWorker extends PdfWorker {
     }
 
     @Override
-    public void run() {
+    protected void process() {
 
         Json data = request.getJsonParams();
         String fileId = data.string("fileId");
@@ -45,55 +50,116 @@ public class SplitDocumentWorker extends PdfWorker {
 
         try {
 
-            List<File> documents = new ArrayList<>();
+            // each part is uploaded as soon as it is written, while the next one is built
+            List<CompletableFuture<Json>> uploads = new ArrayList<>();
+            try (InputStream is = download(fileId).getFile(); PDDocument pdf = DocumentLoader.load(is, workspace)) {
+                split(pdf, interval, workspace, part -> {
+                    CompletableFuture<Json> upload = UploadStage.getInstance().upload(files, part.getName(), part, "application/pdf");
+                    upload.whenComplete((file, e) -> FileUtils.deleteQuietly(part));
+                    uploads.add(upload);
+                });
+            }
 
-            PDFMergerUtility merger = new PDFMergerUtility();
-            Splitter splitter = new Splitter();
+            // parts are reported in their original order
+            Json splitFiles = Json.list();
+            try (Metrics.Timer timer = Metrics.getInstance().time(getFunctionName(), Metrics.UPLOAD)) {
+                for (CompletableFuture<Json> upload : uploads) {
+                    splitFiles.push(UploadStage.await(upload));
+                }
+            }
 
-            InputStream is = files.download(fileId).getFile();
-            PDDocument pdf = PDDocument.load(is);
+            Json res = Json.map();
+            res.set("status", "ok");
+            res.set("files", splitFiles);
 
-            List<PDDocument> splitDoc = splitter.split(pdf);
+            sendResponse(res);
 
-            if (splitDoc.size() > 0) {
+        } catch (IOException e) {
+            logger.info("Error to load file id " + fileId + ". " + e.getMessage());
+            Json res = Json.map();
+            res.set("status", "error");
+            res.set("message", "Failed to create file");
+            sendResponse(res);
+        }
+    }
 
-                for (int i = 0; i < splitDoc.size(); i += interval) {
+    /**
+     * Splits a document in parts of {@code interval} pages, written to files of the workspace.
+     *
+     * @return the parts in their original order
+     */
+    public static List<File> split(PDDocument pdf, int interval, JobWorkspace workspace) throws IOException {
+        List<File> documents = new ArrayList<>();
+        split(pdf, interval, workspace, documents::add);
+        return documents;
+    }
 
-                    int end = (i + interval < splitDoc.size()) ? i + interval : splitDoc.size();
-                    List<PDDocument> sp = splitDoc.subList(i, end);
+    /**
+     * Splits a document in parts of {@code interval} pages, building one part at a time from the pages of
+     * the source, so only the part being written is held besides the source document.
+     *
+     * @param parts receives each part, in their original order, as soon as its file is written
+     */
+    public static void split(PDDocument pdf, int interval, JobWorkspace workspace, Consumer<File> parts) throws IOException {
+        StreamingSplitter splitter = new StreamingSplitter(workspace, parts);
+        splitter.setSplitAtPage(interval);
+        splitter.setMemoryUsageSetting(DocumentLoader.memoryUsage(-1, workspace));
+        try {
+            splitter.split(pdf);
+            splitter.finish();
+        } finally {
+            splitter.discard();
+        }
+    }
 
-                    PDDocument newDocument = new PDDocument();
-                    for (PDDocument page : sp) {
-                        merger.appendDocument(newDocument, page);
-                        page.close();
-                    }
+    /**
+     * Splitter that writes each part and hands it off when the next one is started, instead of returning
+     * all the parts at the end, so the pages are walked only once.
+     */
+    private static class StreamingSplitter extends Splitter {
 
-                    int number = i / interval;
-                    File temp = File.createTempFile("split-doc-" + number, ".pdf");
-                    newDocument.save(temp);
-                    newDocument.close();
+        private final JobWorkspace workspace;
+        private final Consumer<File> parts;
+        private PDDocument current;
+        private int number;
 
-                    documents.add(temp);
+        private StreamingSplitter(JobWorkspace workspace, Consumer<File> parts) {
+            this.workspace = workspace;
+            this.parts = parts;
+        }
 
-                }
+        @Override
+        protected PDDocument createNewDocument() throws IOException {
+            finish();
+            current = super.createNewDocument();
+            return current;
+        }
 
+        /**
+         * Writes the part in progress, if any.
+         */
+        private void finish() throws IOException {
+            if (current == null) {
+                return;
             }
-
-            Json splitFiles = Json.list();
-
-            for (File doc : documents) {
-                Json fileJson = files.upload(doc.getName(), new FileInputStream(doc), "application/pdf");
-                splitFiles.push(fileJson);
+            File temp = workspace.createFile("split-doc-" + number++, ".pdf");
+            try {
+                current.save(temp);
+            } finally {
+                current.close();
+                current = null;
             }
+            parts.accept(temp);
+        }
 
-            Json res = Json.map();
-            res.set("status", "ok");
-            res.set("files", splitFiles);
-
-            events.send("pdfResponse", res, request.getFunctionId());
-
-        } catch (IOException e) {
-            logger.info("Error to load file id " + fileId + ". " + e.getMessage());
+        /**
+         * Closes the part in progress without writing it, when the split failed.
+         */
+        private void discard() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
         }
     }
 }
@@ -0,0 +1,88 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testRejectsJobsOverLimit() {
+        AdmissionControl admissionControl = new AdmissionControl(2, 1000);
+        AdmissionControl.Ticket first = admissionControl.admit("generatePdf", 1, 0);
+        admissionControl.admit("generatePdf", 1, 0);
+        Assert.assertEquals(2, admissionControl.getQueued("generatePdf"));
+
+        assertRejected(admissionControl, "generatePdf", 1, 0);
+
+        first.close();
+        admissionControl.admit("generatePdf", 1, 0);
+        Assert.assertEquals(2, admissionControl.getQueued("generatePdf"));
+    }
+
+    @Test
+    public void testRejectsBytesOverLimit() {
+        AdmissionControl admissionControl = new AdmissionControl(10, 1000);
+        AdmissionControl.Ticket ticket = admissionControl.admit("generatePdf", 1, 0);
+        ticket.addBytes(900);
+
+        assertRejected(admissionControl, "generatePdf", 1, 200);
+        admissionControl.admit("generatePdf", 1, 100);
+
+        ticket.close();
+        Assert.assertEquals(100L, (long) admissionControl.getStats().json("generatePdf").longInteger("bytes"));
+    }
+
+    @Test
+    public void testAcceptsLargeRequestWhenIdle() {
+        AdmissionControl admissionControl = new AdmissionControl(1, 1000);
+        AdmissionControl.Ticket ticket = admissionControl.admit("generatePdfBatch", 5, 5000);
+        Assert.assertEquals(5, admissionControl.getQueued("generatePdfBatch"));
+
+        assertRejected(admissionControl, "generatePdfBatch", 1, 0);
+
+        ticket.close();
+        Assert.assertEquals(0, admissionControl.getQueued("generatePdfBatch"));
+    }
+
+    @Test
+    public void testCloseReleasesOnce() {
+        AdmissionControl admissionControl = new AdmissionControl(10, 1000);
+        AdmissionControl.Ticket first = admissionControl.admit("mergeDocuments", 1, 100);
+        admissionControl.admit("mergeDocuments", 1, 100);
+
+        first.close();
+        first.close();
+        first.addBytes(500);
+
+        Json stats = admissionControl.getStats().json("mergeDocuments");
+        Assert.assertEquals(1L, (long) stats.longInteger("queued"));
+        Assert.assertEquals(100L, (long) stats.longInteger("bytes"));
+    }
+
+    @Test
+    public void testLimitsByFunction() {
+        AdmissionControl admissionControl = new AdmissionControl(10, 1000);
+        admissionControl.setLimits(Json.map().set("fillForm", Json.map().set("maxJobs", 1)));
+
+        admissionControl.admit("fillForm", 1, 0);
+        assertRejected(admissionControl, "fillForm", 1, 0);
+        admissionControl.admit("splitDocument", 1, 0);
+        admissionControl.admit("splitDocument", 1, 0);
+
+        Json stats = admissionControl.getStats();
+        Assert.assertEquals(1L, (long) stats.json("fillForm").longInteger("rejected"));
+        Assert.assertEquals(1000L, (long) stats.json("fillForm").longInteger("maxBytes"));
+        Assert.assertEquals(0L, (long) stats.json("splitDocument").longInteger("rejected"));
+    }
+
+    private void assertRejected(AdmissionControl admissionControl, String function, int jobs, long bytes) {
+        try {
+            admissionControl.admit(function, jobs, bytes);
+            Assert.fail("Request should be rejected");
+        } catch (EndpointException e) {
+            // expected
+        }
+    }
+}
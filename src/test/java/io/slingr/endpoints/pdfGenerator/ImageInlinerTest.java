@@ -0,0 +1,91 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class ImageInlinerTest {
+
+    private static final String LOGO = "https://example.com/logo.png";
+    private static final String LOGO_DATA = "data:image/png;base64,AAAA";
+
+    @Test
+    public void testRewritesQuotedAndUnquotedSources() {
+        Map<String, String> replaces = Collections.singletonMap(LOGO, LOGO_DATA);
+
+        Assert.assertEquals("<img src=\"" + LOGO_DATA + "\">",
+                ImageInliner.rewriteSources("<img src=\"" + LOGO + "\">", replaces));
+        Assert.assertEquals("<img alt='logo' src='" + LOGO_DATA + "'>",
+                ImageInliner.rewriteSources("<img alt='logo' src='" + LOGO + "'>", replaces));
+        Assert.assertEquals("<img src=\"" + LOGO_DATA + "\" width=10>",
+                ImageInliner.rewriteSources("<img src=" + LOGO + " width=10>", replaces));
+        Assert.assertEquals("<IMG SRC = \"" + LOGO_DATA + "\">",
+                ImageInliner.rewriteSources("<IMG SRC = \"" + LOGO + "\">", replaces));
+    }
+
+    @Test
+    public void testMatchesEscapedUrls() {
+        String url = "https://example.com/image?id=1&size=2";
+        Map<String, String> replaces = Collections.singletonMap(url, LOGO_DATA);
+
+        Assert.assertEquals("<img src=\"" + LOGO_DATA + "\">",
+                ImageInliner.rewriteSources("<img src=\"https://example.com/image?id=1&amp;size=2\">", replaces));
+    }
+
+    @Test
+    public void testKeepsOtherSources() {
+        Map<String, String> replaces = new HashMap<>();
+        replaces.put(LOGO, LOGO_DATA);
+        String html = "<img data-src=\"" + LOGO + "\"><img src=\"https://example.com/other.png\"><p>src=" + LOGO + "</p>";
+
+        Assert.assertEquals(html, ImageInliner.rewriteSources(html, replaces));
+        Assert.assertSame(html, ImageInliner.rewriteSources(html, Collections.emptyMap()));
+    }
+
+    @Test
+    public void testRewritesOnlyImageTags() {
+        Map<String, String> replaces = Collections.singletonMap(LOGO, LOGO_DATA);
+        String html = "<script src=\"" + LOGO + "\"></script><iframe src='" + LOGO + "'></iframe>"
+                + "<p> src=\"" + LOGO + "\"</p><script>image.src = '" + LOGO + "';</script>";
+
+        Assert.assertEquals(html, ImageInliner.rewriteSources(html, replaces));
+    }
+
+    @Test
+    public void testIgnoresSourcesInsideOtherAttributes() {
+        Map<String, String> replaces = Collections.singletonMap(LOGO, LOGO_DATA);
+
+        Assert.assertEquals("<img alt=\"see src=" + LOGO + "\" src=\"" + LOGO_DATA + "\"/>",
+                ImageInliner.rewriteSources("<img alt=\"see src=" + LOGO + "\" src=\"" + LOGO + "\"/>", replaces));
+        Assert.assertEquals("<img title='a > b' src=\"" + LOGO_DATA + "\">",
+                ImageInliner.rewriteSources("<img title='a > b' src=\"" + LOGO + "\">", replaces));
+        // the parser only uses the first src attribute
+        Assert.assertEquals("<img src=\"" + LOGO_DATA + "\" src=\"" + LOGO + "\">",
+                ImageInliner.rewriteSources("<img src=\"" + LOGO + "\" src=\"" + LOGO + "\">", replaces));
+    }
+
+    @Test
+    public void testRewritesRepeatedImages() {
+        Map<String, String> replaces = Collections.singletonMap(LOGO, LOGO_DATA);
+        String html = "<div><img src=\"" + LOGO + "\"></div><div><img class=\"small\" src=\"" + LOGO + "\"></div>";
+
+        Assert.assertEquals("<div><img src=\"" + LOGO_DATA + "\"></div><div><img class=\"small\" src=\"" + LOGO_DATA + "\"></div>",
+                ImageInliner.rewriteSources(html, replaces));
+    }
+
+    @Test
+    public void testFindsDistinctRemoteImages() {
+        String html = "<img src=\"" + LOGO + "\"><img src=\"" + LOGO + "\"><img src=\"" + LOGO_DATA + "\">"
+                + "<img src=\"https://example.com/other.png\"><img src=\"\">";
+
+        Set<String> urls = ImageInliner.findImageUrls(html);
+
+        Assert.assertEquals(2, urls.size());
+        Assert.assertTrue(urls.contains(LOGO));
+        Assert.assertTrue(urls.contains("https://example.com/other.png"));
+    }
+}
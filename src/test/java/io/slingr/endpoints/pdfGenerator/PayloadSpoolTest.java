@@ -0,0 +1,97 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+public class PayloadSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void init() {
+        JobWorkspace.configure(folder.getRoot());
+    }
+
+    @Test
+    public void testSmallPayloadsStayInMemory() throws IOException {
+        PayloadSpool spool = new PayloadSpool(10, 100);
+        PayloadSpool.Payload payload = spool.store("small");
+
+        Assert.assertFalse(payload.isSpilled());
+        Assert.assertEquals("small", payload.read());
+        Assert.assertEquals(10, payload.getMemorySize());
+        Assert.assertEquals(0, segments().size());
+    }
+
+    @Test
+    public void testRotatesFullSegments() throws IOException {
+        PayloadSpool spool = new PayloadSpool(10, 100);
+        String firstValue = StringUtils.repeat("a", 60);
+        String secondValue = StringUtils.repeat("b", 60);
+        PayloadSpool.Payload first = spool.store(firstValue);
+        PayloadSpool.Payload second = spool.store(secondValue);
+
+        Assert.assertTrue(first.isSpilled());
+        Assert.assertEquals(0, first.getMemorySize());
+        Assert.assertEquals(2, segments().size());
+        Assert.assertEquals(120, spool.getDiskUsage());
+        Assert.assertEquals(firstValue, first.read());
+        Assert.assertEquals(secondValue, second.read());
+    }
+
+    @Test
+    public void testRemovesSealedSegmentWhenReleased() throws IOException {
+        PayloadSpool spool = new PayloadSpool(10, 100);
+        PayloadSpool.Payload first = spool.store(StringUtils.repeat("a", 60));
+        PayloadSpool.Payload second = spool.store(StringUtils.repeat("b", 60));
+
+        first.close();
+        Assert.assertEquals(1, segments().size());
+        Assert.assertEquals(60, spool.getDiskUsage());
+
+        // the current segment is kept until a new one replaces it
+        second.close();
+        Assert.assertEquals(1, segments().size());
+        spool.store(StringUtils.repeat("c", 20));
+        Assert.assertEquals(1, segments().size());
+        Assert.assertEquals(20, spool.getDiskUsage());
+    }
+
+    @Test
+    public void testReleasedPayloadCanNotBeRead() throws IOException {
+        PayloadSpool spool = new PayloadSpool(10, 100);
+        PayloadSpool.Payload payload = spool.store(StringUtils.repeat("a", 20));
+        payload.close();
+        payload.close();
+
+        try {
+            payload.read();
+            Assert.fail("Released payload should not be read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNegativeThresholdKeepsEverythingInMemory() throws IOException {
+        PayloadSpool spool = new PayloadSpool(-1, 100);
+        PayloadSpool.Payload payload = spool.store(StringUtils.repeat("a", 1000));
+
+        Assert.assertFalse(payload.isSpilled());
+        Assert.assertEquals(0, spool.getSpilled());
+    }
+
+    private Collection<File> segments() {
+        return FileUtils.listFiles(folder.getRoot(), new String[]{"dat"}, true);
+    }
+}
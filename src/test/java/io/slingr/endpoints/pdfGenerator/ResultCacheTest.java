@@ -0,0 +1,69 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResultCacheTest {
+
+    @Test
+    public void testEntriesExpireAfterTtl() throws InterruptedException {
+        ResultCache cache = new ResultCache(10, 100);
+        Json file = Json.map().set("fileId", "1");
+        cache.put("key", file);
+
+        Assert.assertEquals("1", cache.get("key").string("fileId"));
+        Thread.sleep(150);
+        Assert.assertNull(cache.get("key"));
+
+        Json stats = cache.getStats();
+        Assert.assertEquals(0, (int) stats.integer("entries"));
+        Assert.assertEquals(1L, (long) stats.longInteger("hits"));
+        Assert.assertEquals(1L, (long) stats.longInteger("misses"));
+    }
+
+    @Test
+    public void testPutRestartsTtl() throws InterruptedException {
+        ResultCache cache = new ResultCache(10, 200);
+        cache.put("key", Json.map().set("fileId", "1"));
+        Thread.sleep(120);
+        cache.put("key", Json.map().set("fileId", "2"));
+        Thread.sleep(120);
+
+        Assert.assertEquals("2", cache.get("key").string("fileId"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ResultCache cache = new ResultCache(2, ResultCache.DEFAULT_TTL);
+        cache.put("first", Json.map().set("fileId", "1"));
+        cache.put("second", Json.map().set("fileId", "2"));
+        cache.get("first");
+        cache.put("third", Json.map().set("fileId", "3"));
+
+        Assert.assertNotNull(cache.get("first"));
+        Assert.assertNull(cache.get("second"));
+        Assert.assertNotNull(cache.get("third"));
+        Assert.assertEquals(1L, (long) cache.getStats().longInteger("evictions"));
+    }
+
+    @Test
+    public void testFailedUploadsAreNotCached() {
+        ResultCache cache = new ResultCache(2, ResultCache.DEFAULT_TTL);
+        cache.put("key", null);
+
+        Assert.assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testKeyDependsOnSettingsAndEngine() {
+        String html = "<html><body>document</body></html>";
+        Json settings = Json.map().set("pageSize", "letter");
+        String key = ResultCache.key(html, settings, "0.12.6");
+
+        Assert.assertEquals(key, ResultCache.key(html, Json.map().set("pageSize", "letter"), "0.12.6"));
+        Assert.assertNotEquals(key, ResultCache.key(html, Json.map().set("pageSize", "A4"), "0.12.6"));
+        Assert.assertNotEquals(key, ResultCache.key(html, settings, "9.1.22"));
+        Assert.assertNotEquals(key, ResultCache.key(html + " ", settings, "0.12.6"));
+    }
+}
@@ -0,0 +1,111 @@
+package io.slingr.endpoints.pdfGenerator;
+
+import io.slingr.endpoints.services.Files;
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class UploadStageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void init() throws IOException {
+        file = folder.newFile("document.pdf");
+        FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRetriesFailedUploads() throws IOException {
+        FlakyFiles files = new FlakyFiles(2);
+        UploadStage stage = new UploadStage(1, 4, 20, 100);
+
+        Json fileJson = stage.uploadAndWait(files, "document.pdf", file, "application/pdf");
+
+        Assert.assertEquals("document.pdf", fileJson.string("fileName"));
+        Assert.assertEquals(3, files.attempts.size());
+        Assert.assertEquals(2, stage.getRetries());
+        Assert.assertEquals(1, stage.getUploads());
+        Assert.assertEquals(0, stage.getFailures());
+        // every attempt sends the whole file again
+        for (String content : files.contents) {
+            Assert.assertEquals("content", content);
+        }
+        // the first retry waits at least half of the initial backoff and the second one half of twice that
+        Assert.assertTrue(files.attempts.get(1) - files.attempts.get(0) >= 10);
+        Assert.assertTrue(files.attempts.get(2) - files.attempts.get(1) >= 20);
+    }
+
+    @Test
+    public void testFailsAfterMaxAttempts() {
+        FlakyFiles files = new FlakyFiles(10);
+        UploadStage stage = new UploadStage(1, 3, 1, 10);
+
+        try {
+            stage.uploadAndWait(files, "document.pdf", file, "application/pdf");
+            Assert.fail("Upload should fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("after 3 attempts"));
+        }
+        Assert.assertEquals(3, files.attempts.size());
+        Assert.assertEquals(1, stage.getFailures());
+        Assert.assertEquals(0, stage.getUploads());
+    }
+
+    @Test
+    public void testBackoffIsBoundedWithJitter() {
+        UploadStage stage = new UploadStage(1, 4, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            long first = stage.backoff(1);
+            Assert.assertTrue(first >= 50 && first <= 100);
+            long third = stage.backoff(3);
+            Assert.assertTrue(third >= 200 && third <= 400);
+            long capped = stage.backoff(30);
+            Assert.assertTrue(capped >= 500 && capped <= 1000);
+        }
+    }
+
+    /**
+     * File service that fails the first uploads.
+     */
+    private static class FlakyFiles extends Files {
+
+        private final int failures;
+        private final List<Long> attempts = new CopyOnWriteArrayList<>();
+        private final List<String> contents = new CopyOnWriteArrayList<>();
+
+        private FlakyFiles(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public Json upload(String fileName, InputStream is, String contentType) {
+            attempts.add(System.currentTimeMillis());
+            try {
+                contents.add(IOUtils.toString(is, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (attempts.size() <= failures) {
+                throw new IllegalStateException("File service is not available");
+            }
+            return Json.map().set("fileId", "1").set("fileName", fileName).set("contentType", contentType);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package io.slingr.endpoints.pdfGenerator.benchmarks;
+
+import io.slingr.endpoints.pdfGenerator.JobWorkspace;
+import io.slingr.endpoints.pdfGenerator.PdfFilesUtils;
+import io.slingr.endpoints.pdfGenerator.PdfFillForm;
+import io.slingr.endpoints.pdfGenerator.PdfHeaderFooterHandler;
+import io.slingr.endpoints.pdfGenerator.workers.MergeDocumentsWorker;
+import io.slingr.endpoints.pdfGenerator.workers.SplitDocumentWorker;
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations on existing documents: stamping header and footer images, merging, splitting,
+ * filling forms and rendering pages to images.
+ * <p>
+ * Documents are kept in memory, so the benchmarks measure PDFBox and iText instead of the file
+ * service. Run it with {@code -prof gc} to get the allocation rate of each operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DocumentBenchmark {
+
+    private static final int FORM_FIELDS = 20;
+
+    private byte[] report;
+    private byte[] header;
+    private byte[] footer;
+    private byte[] form;
+    private Json formSettings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        report = Fixtures.bytes("/report.pdf");
+        header = Fixtures.bytes("/header.png");
+        footer = Fixtures.bytes("/footer.png");
+        form = Fixtures.form(FORM_FIELDS);
+
+        Json data = Json.map();
+        for (int i = 0; i < FORM_FIELDS; i++) {
+            if (i % 2 == 0) {
+                data.set("field" + i, "Value " + i);
+            } else {
+                data.set("field" + i, Json.map()
+                        .set("value", "Styled value " + i)
+                        .set("textSize", 10)
+                        .set("textColor", "#336699"));
+            }
+        }
+        formSettings = Json.map().set("data", data);
+    }
+
+    @Benchmark
+    public String headerWithImages() throws Exception {
+        try (JobWorkspace workspace = JobWorkspace.create("benchmark")) {
+            PdfHeaderFooterHandler handler = new PdfHeaderFooterHandler(workspace);
+            String path = handler.setHeaderWithImage(new ByteArrayInputStream(report), new ByteArrayInputStream(header), 50, 0,
+                    new ByteArrayInputStream(footer), 50, 0);
+            if (path == null) {
+                throw new IllegalStateException("Header and footer were not added");
+            }
+            return path;
+        }
+    }
+
+    @Benchmark
+    public int merge() throws Exception {
+        try (PDDocument target = new PDDocument();
+             PDDocument first = PDDocument.load(report);
+             PDDocument second = PDDocument.load(report)) {
+            MergeDocumentsWorker.appendPages(target, first, Json.map());
+            MergeDocumentsWorker.appendPages(target, second, Json.map().set("start", 2).set("end", 5));
+            target.save(new NullOutputStream());
+            return target.getNumberOfPages();
+        }
+    }
+
+    @Benchmark
+    public int split() throws Exception {
+        try (JobWorkspace workspace = JobWorkspace.create("benchmark");
+             PDDocument pdf = PDDocument.load(report)) {
+            List<File> parts = SplitDocumentWorker.split(pdf, 2, workspace);
+            return parts.size();
+        }
+    }
+
+    @Benchmark
+    public long fillForm() throws Exception {
+        try (JobWorkspace workspace = JobWorkspace.create("benchmark")) {
+            File filled = new PdfFillForm(null).fillForm(new ByteArrayInputStream(form), null, workspace, "benchmark", formSettings);
+            if (filled == null) {
+                throw new IllegalStateException("Form was not filled");
+            }
+            return filled.length();
+        }
+    }
+
+    @Benchmark
+    public long renderPage(RenderState state) throws Exception {
+        try (JobWorkspace workspace = JobWorkspace.create("benchmark")) {
+            File image = workspace.createFile("page-", ".jpg");
+            PdfFilesUtils.renderPageToJpeg(state.renderer, state.nextPage(), state.dpi, image);
+            return image.length();
+        }
+    }
+
+    /**
+     * Document loaded once per thread, like the conversion of a document to images renders all its
+     * pages with the same renderer.
+     */
+    @State(Scope.Thread)
+    public static class RenderState {
+
+        @Param({"150"})
+        public int dpi;
+
+        private PDDocument document;
+        private PDFRenderer renderer;
+        private int page;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            document = PDDocument.load(Fixtures.bytes("/report.pdf"));
+            renderer = new PDFRenderer(document);
+        }
+
+        private int nextPage() {
+            page = (page + 1) % document.getNumberOfPages();
+            return page;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            document.close();
+        }
+    }
+}
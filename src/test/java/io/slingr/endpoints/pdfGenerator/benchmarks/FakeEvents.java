@@ -0,0 +1,50 @@
+package io.slingr.endpoints.pdfGenerator.benchmarks;
+
+import io.slingr.endpoints.services.Events;
+import io.slingr.endpoints.utils.Json;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Event service that completes the request waiting for the response of each function call.
+ */
+class FakeEvents extends Events {
+
+    private static final String RESPONSE_EVENT = "pdfResponse";
+
+    private final Faults faults;
+    private final Map<String, CompletableFuture<Json>> responses = new ConcurrentHashMap<>();
+
+    FakeEvents(Faults faults) {
+        this.faults = faults;
+    }
+
+    /**
+     * Returns the future completed with the response event of the function call.
+     */
+    CompletableFuture<Json> expect(String functionId) {
+        return responses.computeIfAbsent(functionId, id -> new CompletableFuture<>());
+    }
+
+    void forget(String functionId) {
+        responses.remove(functionId);
+    }
+
+    @Override
+    public void send(String event, Object data) {
+        faults.apply("event");
+    }
+
+    @Override
+    public void send(String event, Object data, String functionId) {
+        faults.apply("event");
+        if (RESPONSE_EVENT.equals(event) && functionId != null) {
+            CompletableFuture<Json> response = responses.remove(functionId);
+            if (response != null) {
+                response.complete(data instanceof Json ? (Json) data : Json.map());
+            }
+        }
+    }
+}
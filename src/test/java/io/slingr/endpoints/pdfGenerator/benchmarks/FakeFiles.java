@@ -0,0 +1,106 @@
+package io.slingr.endpoints.pdfGenerator.benchmarks;
+
+import io.slingr.endpoints.services.Files;
+import io.slingr.endpoints.services.rest.DownloadedFile;
+import io.slingr.endpoints.utils.Json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * File service kept in memory, for running the endpoint without the platform.
+ * <p>
+ * Files added with {@link #put} can be downloaded. Uploaded files are read and discarded, only their
+ * size is kept, so a long run does not fill the heap with generated documents.
+ */
+class FakeFiles extends Files {
+
+    private final Faults downloads;
+    private final Faults uploads;
+    private final Map<String, StoredFile> files = new ConcurrentHashMap<>();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+
+    FakeFiles(Faults downloads, Faults uploads) {
+        this.downloads = downloads;
+        this.uploads = uploads;
+    }
+
+    void put(String fileId, String fileName, String contentType, byte[] content) {
+        files.put(fileId, new StoredFile(fileName, contentType, content));
+    }
+
+    @Override
+    public DownloadedFile download(String fileId) {
+        downloads.apply("download");
+        StoredFile file = storedFile(fileId);
+        return new DownloadedFile() {
+            @Override
+            public InputStream getFile() {
+                return new ByteArrayInputStream(file.content);
+            }
+        };
+    }
+
+    @Override
+    public Json upload(String fileName, InputStream is, String contentType) {
+        uploads.apply("upload");
+        long size = 0;
+        byte[] buffer = new byte[8192];
+        try {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                size += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        uploadedBytes.addAndGet(size);
+        return Json.map()
+                .set("fileId", UUID.randomUUID().toString())
+                .set("fileName", fileName)
+                .set("contentType", contentType)
+                .set("length", size);
+    }
+
+    @Override
+    public Json metadata(String fileId) {
+        downloads.apply("metadata");
+        StoredFile file = storedFile(fileId);
+        return Json.map()
+                .set("fileId", fileId)
+                .set("fileName", file.fileName)
+                .set("contentType", file.contentType)
+                .set("length", file.content.length);
+    }
+
+    private StoredFile storedFile(String fileId) {
+        StoredFile file = files.get(fileId);
+        if (file == null) {
+            throw new IllegalArgumentException(String.format("File [%s] not found", fileId));
+        }
+        return file;
+    }
+
+    long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    private static class StoredFile {
+
+        private final String fileName;
+        private final String contentType;
+        private final byte[] content;
+
+        private StoredFile(String fileName, String contentType, byte[] content) {
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.slingr.endpoints.pdfGenerator.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and failures injected in the calls to a fake service.
+ */
+class Faults {
+
+    private final long latency;
+    private final long jitter;
+    private final double failureRate;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param latency     milliseconds added to each call
+     * @param jitter      maximum random milliseconds added on top of the latency
+     * @param failureRate fraction of calls that fail, from 0 to 1
+     */
+    Faults(long latency, long jitter, double failureRate) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Waits the latency of a call and fails it at the configured rate.
+     *
+     * @param operation name of the call, for the error message
+     */
+    void apply(String operation) {
+        calls.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latency + (jitter > 0 ? random.nextLong(jitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            failures.incrementAndGet();
+            throw new IllegalStateException(String.format("Injected failure of %s", operation));
+        }
+    }
+
+    long getCalls() {
+        return calls.get();
+    }
+
+    long getFailures() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,93 @@
+package io.slingr.endpoints.pdfGenerator.benchmarks;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the files in {@code src/test/resources} used by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static String template(String name) throws IOException {
+        return new String(bytes("/templates/" + name), "UTF-8");
+    }
+
+    static byte[] bytes(String path) throws IOException {
+        try (InputStream is = Fixtures.class.getResourceAsStream(path)) {
+            if (is == null) {
+                throw new IOException("Fixture not found: " + path);
+            }
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    /**
+     * Data of the {@code report.ftl} template with the given number of rows.
+     */
+    static Map<String, Object> reportData(int rows) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("title", "Example PDF");
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", "Item " + i);
+            item.put("quantity", i % 7 + 1);
+            item.put("price", "$" + (i * 13 % 1000));
+            items.add(item);
+        }
+        data.put("items", items);
+        return data;
+    }
+
+    /**
+     * Form with text fields named {@code field0}, {@code field1} and so on.
+     */
+    static byte[] form(int fields) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.LETTER);
+            document.addPage(page);
+
+            PDAcroForm acroForm = new PDAcroForm(document);
+            document.getDocumentCatalog().setAcroForm(acroForm);
+            PDResources resources = new PDResources();
+            resources.put(COSName.getPDFName("Helv"), PDType1Font.HELVETICA);
+            acroForm.setDefaultResources(resources);
+            acroForm.setDefaultAppearance("/Helv 0 Tf 0 g");
+
+            for (int i = 0; i < fields; i++) {
+                PDTextField field = new PDTextField(acroForm);
+                field.setPartialName("field" + i);
+                field.setDefaultAppearance("/Helv 12 Tf 0 g");
+                acroForm.getFields().add(field);
+
+                PDAnnotationWidget widget = field.getWidgets().get(0);
+                widget.setRectangle(new PDRectangle(50, 740 - i * 35, 300, 25));
+                widget.setPage(page);
+                page.getAnnotations().add(widget);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+}
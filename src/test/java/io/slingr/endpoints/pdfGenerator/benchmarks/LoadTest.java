@@ -0,0 +1,522 @@
+package io.slingr.endpoints.pdfGenerator.benchmarks;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.pdfGenerator.Metrics;
+import io.slingr.endpoints.pdfGenerator.PdfGenerator;
+import io.slingr.endpoints.pdfGenerator.UploadStage;
+import io.slingr.endpoints.services.AppLogs;
+import io.slingr.endpoints.services.Events;
+import io.slingr.endpoints.services.Files;
+import io.slingr.endpoints.utils.Json;
+import io.slingr.endpoints.ws.exchange.FunctionRequest;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Drives the endpoint with a mix of function calls, using in memory file and event services with
+ * injected latency and failures, so it runs without the platform or network access.
+ * <p>
+ * Without {@code --profile} it starts a JVM for each deployment profile of {@code endpoint.json},
+ * with the memory of the profile as maximum heap, and prints the results of all of them. With
+ * {@code --profile} the load runs in the current JVM. Each call waits for its {@code pdfResponse}
+ * event, so latencies are measured from the call to the response, like an app sees them.
+ * <p>
+ * Options, all optional:
+ * <pre>
+ * --profiles default,bigFiles   profiles to run, all of them by default
+ * --requests 2000               number of calls
+ * --clients 16                  calls in progress at the same time
+ * --mix generatePdf=4,fillForm=2
+ * --latency 20 --jitter 20      milliseconds added to each call to the fake services
+ * --download-failures 0.0       fraction of downloads that fail
+ * --upload-failures 0.05        fraction of uploads that fail
+ * --timeout 120                 seconds to wait for the response of a call
+ * --property renderEngine=flyingSaucer  endpoint property, can be repeated
+ * </pre>
+ */
+public class LoadTest {
+
+    private static Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final String SUMMARY = "SUMMARY ";
+    private static final int FORM_FIELDS = 20;
+
+    private final Map<String, String> options;
+    private final Map<String, String> properties;
+    private final Map<String, Integer> mix;
+
+    private FakeFiles files;
+    private FakeEvents events;
+    private Faults downloadFaults;
+    private Faults uploadFaults;
+    private Faults eventFaults;
+    private LoadTestEndpoint endpoint;
+    private Map<String, Function<FunctionRequest, Json>> functions;
+    private String reportTemplate;
+
+    private final Map<String, FunctionResults> results = new LinkedHashMap<>();
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    private LoadTest(Map<String, String> options, Map<String, String> properties) {
+        this.options = options;
+        this.properties = properties;
+        this.mix = parseMix(options.getOrDefault("mix",
+                "generatePdf=4,generatePdfBatch=1,mergeDocuments=2,splitDocument=1,fillForm=2,replaceHeaderAndFooter=1,addImages=1,convertPdfToImages=1"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("renderEngine", "flyingSaucer");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String name = args[i].replaceFirst("^--", "");
+            if ("property".equals(name)) {
+                String[] property = args[i + 1].split("=", 2);
+                properties.put(property[0], property.length > 1 ? property[1] : "");
+            } else {
+                options.put(name, args[i + 1]);
+            }
+        }
+        if (options.containsKey("profile")) {
+            new LoadTest(options, properties).run();
+            System.exit(0);
+        } else {
+            runProfiles(args, options);
+        }
+    }
+
+    /**
+     * Runs the load in a new JVM for each profile and prints a line per profile at the end.
+     */
+    private static void runProfiles(String[] args, Map<String, String> options) throws Exception {
+        Json descriptor = Json.parse(FileUtils.readFileToString(new File("endpoint.json"), StandardCharsets.UTF_8));
+        List<String> selected = options.containsKey("profiles") ? Arrays.asList(options.get("profiles").split(",")) : null;
+        List<String> summaries = new ArrayList<>();
+        for (Json profile : descriptor.json("deployment").jsons("profiles")) {
+            String name = profile.string("name");
+            if (selected != null && !selected.contains(name)) {
+                continue;
+            }
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add(String.format("-Xmx%sm", profile.integer("memory")));
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(LoadTest.class.getName());
+            Collections.addAll(command, args);
+            command.add("--profile");
+            command.add(name);
+
+            System.out.println(String.format("Running profile [%s] with [%s] MB of heap", name, profile.integer("memory")));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    System.out.println(line);
+                    if (line.startsWith(SUMMARY)) {
+                        summaries.add(line.substring(SUMMARY.length()));
+                    }
+                }
+            }
+            if (process.waitFor() != 0) {
+                summaries.add(String.format("%-12s failed with exit code %s", name, process.exitValue()));
+            }
+        }
+        System.out.println();
+        System.out.println(String.format("%-12s %10s %8s %8s %10s %10s %10s", "profile", "requests", "errors", "rejected", "req/s", "p50 ms", "p99 ms") + "  peak heap MB");
+        for (String summary : summaries) {
+            System.out.println(summary);
+        }
+    }
+
+    private void run() throws Exception {
+        String profile = options.get("profile");
+        int requests = intOption("requests", 2000);
+        int clients = intOption("clients", 16);
+        long timeout = intOption("timeout", 120) * 1000L;
+        long latency = intOption("latency", 20);
+        long jitter = intOption("jitter", 20);
+
+        downloadFaults = new Faults(latency, jitter, doubleOption("download-failures", 0));
+        uploadFaults = new Faults(latency, jitter, doubleOption("upload-failures", 0.05));
+        eventFaults = new Faults(latency, jitter, 0);
+        files = new FakeFiles(downloadFaults, uploadFaults);
+        events = new FakeEvents(eventFaults);
+        files.put("report", "report.pdf", "application/pdf", Fixtures.bytes("/report.pdf"));
+        files.put("form", "form.pdf", "application/pdf", Fixtures.form(FORM_FIELDS));
+        files.put("header", "header.png", "image/png", Fixtures.bytes("/header.png"));
+        files.put("footer", "footer.png", "image/png", Fixtures.bytes("/footer.png"));
+        reportTemplate = Fixtures.template("report.ftl");
+
+        endpoint = new LoadTestEndpoint(files, events);
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            endpoint.setProperty(property.getKey(), property.getValue());
+        }
+        endpoint.start();
+
+        functions = new LinkedHashMap<>();
+        functions.put("generatePdf", endpoint::generatePdf);
+        functions.put("generatePdfBatch", endpoint::generatePdfBatch);
+        functions.put("mergeDocuments", endpoint::mergeDocuments);
+        functions.put("splitDocument", endpoint::splitDocument);
+        functions.put("fillForm", endpoint::fillForm);
+        functions.put("replaceHeaderAndFooter", endpoint::replaceHeaderAndFooter);
+        functions.put("addImages", endpoint::addImages);
+        functions.put("convertPdfToImages", request -> {
+            try {
+                return endpoint.convertPdfToImages(request);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        for (String function : mix.keySet()) {
+            if (!functions.containsKey(function)) {
+                throw new IllegalArgumentException(String.format("Unknown function [%s]", function));
+            }
+            results.put(function, new FunctionResults());
+        }
+
+        System.out.println(String.format("Profile [%s]: [%s] requests from [%s] clients, mix %s", profile, requests, clients, mix));
+        HeapSampler sampler = new HeapSampler();
+        sampler.start();
+
+        AtomicInteger remaining = new AtomicInteger(requests);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            executor.execute(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    call(pickFunction(), timeout);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long elapsed = System.nanoTime() - start;
+        sampler.interrupt();
+
+        report(profile, elapsed);
+    }
+
+    private void call(String function, long timeout) {
+        FunctionResults functionResults = results.get(function);
+        String functionId = UUID.randomUUID().toString();
+        CompletableFuture<Json> response = events.expect(functionId);
+        long start = System.nanoTime();
+        try {
+            functions.get(function).apply(new Request(function, functionId, params(function)));
+        } catch (EndpointException e) {
+            // rejected by admission control or invalid arguments, the caller would try again later
+            events.forget(functionId);
+            functionResults.rejected.incrementAndGet();
+            sleep(100);
+            return;
+        } catch (RuntimeException e) {
+            // failed before the job was accepted, like a synchronous function that could not download its files
+            events.forget(functionId);
+            functionResults.failed.incrementAndGet();
+            return;
+        }
+        try {
+            Json res = response.get(timeout, TimeUnit.MILLISECONDS);
+            functionResults.record(System.nanoTime() - start, !"error".equals(res.string("status")));
+        } catch (TimeoutException e) {
+            events.forget(functionId);
+            functionResults.timeouts.incrementAndGet();
+        } catch (Exception e) {
+            functionResults.failed.incrementAndGet();
+        }
+    }
+
+    private Json params(String function) {
+        switch (function) {
+            case "generatePdf":
+                return Json.map()
+                        .set("template", reportTemplate)
+                        .set("data", reportData(ThreadLocalRandom.current().nextInt(10, 200)))
+                        .set("settings", Json.map().set("pageSize", "letter"));
+            case "generatePdfBatch":
+                Json records = Json.list();
+                for (int i = 0; i < 5; i++) {
+                    records.push(reportData(20));
+                }
+                return Json.map()
+                        .set("template", reportTemplate)
+                        .set("records", records)
+                        .set("settings", Json.map().set("pageSize", "letter"));
+            case "mergeDocuments":
+                return Json.map().set("documents", Json.list()
+                        .push(Json.map().set("file", "report"))
+                        .push(Json.map().set("file", "report").set("start", 2).set("end", 5)));
+            case "splitDocument":
+                return Json.map().set("fileId", "report").set("interval", 3);
+            case "fillForm":
+                Json data = Json.map();
+                for (int i = 0; i < FORM_FIELDS; i++) {
+                    data.set("field" + i, Json.map().set("value", "Value " + i).set("textSize", 10).set("textColor", "#336699"));
+                }
+                return Json.map().set("fileId", "form").set("settings", Json.map().set("data", data));
+            case "replaceHeaderAndFooter":
+                return Json.map().set("fileId", "report").set("settings", Json.map()
+                        .set("header", Json.map().set("imageId", "header"))
+                        .set("footer", Json.map().set("imageId", "footer")));
+            case "addImages":
+                return Json.map().set("fileId", "report").set("settings", Json.map().set("images", Json.list()
+                        .push(Json.map().set("pageIndex", 0).set("fileId", "header"))
+                        .push(Json.map().set("pageIndex", 1).set("fileId", "footer").set("fullPage", true))));
+            case "convertPdfToImages":
+                return Json.map().set("fileIds", Json.list().push("report")).set("dpi", 72).set("settings", Json.map());
+            default:
+                throw new IllegalArgumentException(String.format("Unknown function [%s]", function));
+        }
+    }
+
+    private static Json reportData(int rows) {
+        Json items = Json.list();
+        for (int i = 0; i < rows; i++) {
+            items.push(Json.map().set("name", "Item " + i).set("quantity", i % 7 + 1).set("price", "$" + (i * 13 % 1000)));
+        }
+        return Json.map().set("title", "Load test").set("items", items);
+    }
+
+    private String pickFunction() {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    private void report(String profile, long elapsed) {
+        double seconds = elapsed / 1e9;
+        List<Long> all = new ArrayList<>();
+        long errors = 0;
+        long rejected = 0;
+        System.out.println();
+        System.out.println(String.format("%-24s %8s %8s %8s %8s %10s %10s", "function", "ok", "errors", "rejected", "timeouts", "p50 ms", "p99 ms"));
+        for (Map.Entry<String, FunctionResults> entry : results.entrySet()) {
+            FunctionResults functionResults = entry.getValue();
+            List<Long> latencies = functionResults.getLatencies();
+            all.addAll(latencies);
+            errors += functionResults.errors.get() + functionResults.failed.get() + functionResults.timeouts.get();
+            rejected += functionResults.rejected.get();
+            System.out.println(String.format("%-24s %8s %8s %8s %8s %10s %10s", entry.getKey(),
+                    functionResults.ok.get(), functionResults.errors.get() + functionResults.failed.get(), functionResults.rejected.get(),
+                    functionResults.timeouts.get(), percentile(latencies, 0.5), percentile(latencies, 0.99)));
+        }
+        Collections.sort(all);
+        System.out.println();
+        System.out.println(String.format("Completed [%s] calls in [%.1f] s, [%.1f] calls per second, peak heap [%s] MB",
+                all.size(), seconds, all.size() / seconds, peakHeap.get() / (1024 * 1024)));
+        System.out.println(String.format("Downloads [%s] with [%s] failures, uploads [%s] with [%s] failures, [%s] retries, [%s] MB uploaded",
+                downloadFaults.getCalls(), downloadFaults.getFailures(), uploadFaults.getCalls(), uploadFaults.getFailures(),
+                UploadStage.getInstance().getRetries(), files.getUploadedBytes() / (1024 * 1024)));
+        logger.info(String.format("Endpoint metrics: %s", Metrics.getInstance().getSummary()));
+        System.out.println(SUMMARY + String.format("%-12s %10s %8s %8s %10.1f %10s %10s  %s", profile, all.size(), errors, rejected,
+                all.size() / seconds, percentile(all, 0.5), percentile(all, 0.99), peakHeap.get() / (1024 * 1024)));
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(sorted.size() * percentile) - 1;
+        return sorted.get(Math.max(0, index)) / 1000000;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+
+    private static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            String[] weight = entry.split("=");
+            mix.put(weight[0].trim(), weight.length > 1 ? Integer.parseInt(weight[1].trim()) : 1);
+        }
+        return mix;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Samples the used heap, because the peak usage of the memory pools includes garbage that was
+     * never live at the same time.
+     */
+    private class HeapSampler extends Thread {
+
+        private HeapSampler() {
+            super("heap-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            while (!isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                LoadTest.sleep(20);
+            }
+        }
+    }
+
+    private static class FunctionResults {
+
+        private final List<Long> latencies = new ArrayList<>();
+        private final AtomicLong ok = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+
+        /**
+         * Records the latency of a call that got its response, successful or not.
+         */
+        private synchronized void record(long nanos, boolean success) {
+            latencies.add(nanos);
+            (success ? ok : errors).incrementAndGet();
+        }
+
+        private synchronized List<Long> getLatencies() {
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * Endpoint using the fake services instead of the platform ones.
+     */
+    private static class LoadTestEndpoint extends PdfGenerator {
+
+        private final Files files;
+        private final Events events;
+
+        private LoadTestEndpoint(Files files, Events events) {
+            this.files = files;
+            this.events = events;
+            this.appLogger = new AppLogs() {
+                @Override
+                public void info(String message) {
+                    logger.debug(message);
+                }
+
+                @Override
+                public void info(String message, Object additionalInfo) {
+                    logger.debug(message);
+                }
+
+                @Override
+                public void error(String message) {
+                    logger.debug(message);
+                }
+
+                @Override
+                public void error(String message, Object additionalInfo) {
+                    logger.debug(message);
+                }
+            };
+        }
+
+        @Override
+        public Files files() {
+            return files;
+        }
+
+        @Override
+        public Events events() {
+            return events;
+        }
+
+        @Override
+        protected void start() {
+            // overridden to make it visible to the load test
+            super.start();
+        }
+
+        /**
+         * Sets an endpoint property, like the platform does when the endpoint is deployed.
+         */
+        private void setProperty(String name, String value) throws ReflectiveOperationException {
+            Field field = PdfGenerator.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(this, field.getType() == boolean.class ? Boolean.parseBoolean(value) : value);
+        }
+    }
+
+    private static class Request extends FunctionRequest {
+
+        private final String function;
+        private final String functionId;
+        private final Json params;
+
+        private Request(String function, String functionId, Json params) {
+            this.function = function;
+            this.functionId = functionId;
+            this.params = params;
+        }
+
+        @Override
+        public Json getJsonParams() {
+            return params;
+        }
+
+        @Override
+        public Json getParams() {
+            return params;
+        }
+
+        @Override
+        public String getFunctionId() {
+            return functionId;
+        }
+
+        @Override
+        public String getFunctionName() {
+            return function;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.slingr.endpoints.pdfGenerator.benchmarks;
+
+import io.slingr.endpoints.pdfGenerator.JobWorkspace;
+import io.slingr.endpoints.pdfGenerator.PdfEngine;
+import io.slingr.endpoints.pdfGenerator.RendererPool;
+import io.slingr.endpoints.pdfGenerator.TemplateCache;
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the render engines on the templates in {@code src/test/resources/templates}.
+ * <p>
+ * Reports throughput and latency percentiles. Run with {@code -prof gc} to get the allocation rate
+ * of the endpoint, and with {@code -t} to measure throughput with concurrent renders. Memory used
+ * by wkhtmltopdf processes is not part of the JVM, so it is not included in the GC profiler
+ * results. Requires {@code /usr/bin/wkhtmltopdf} for the wkhtmltopdf engine.
+ * <p>
+ * {@code poolSize} compares starting one wkhtmltopdf process per document, with 0, against the warm
+ * {@link RendererPool}. It does not apply to the flyingSaucer engine, so those results only repeat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class RenderEngineBenchmark {
+
+    @Param({"wkhtmltopdf", "flyingSaucer"})
+    public String engine;
+
+    @Param({"10", "500"})
+    public int rows;
+
+    @Param({"0", "3"})
+    public int poolSize;
+
+    private String html;
+    private Json settings;
+
+    @Setup
+    public void setup() throws Exception {
+        html = TemplateCache.getInstance().process(Fixtures.template("report.ftl"), Fixtures.reportData(rows));
+
+        settings = Json.map()
+                .set("engine", engine)
+                .set("pageSize", "letter")
+                .set("marginTop", 30)
+                .set("headerTemplate", Fixtures.template("header.ftl"))
+                .set("headerData", Json.map().set("title", "Page title!!"))
+                .set("footerTemplate", Fixtures.template("footer.ftl"))
+                .set("footerData", Json.map().set("name", "User Name"));
+
+        RendererPool.configure(PdfEngine.WKHTMLTOPDF, poolSize, RendererPool.DEFAULT_MAX_JOBS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RendererPool.configure(PdfEngine.WKHTMLTOPDF, 0, RendererPool.DEFAULT_MAX_JOBS);
+    }
+
+    @Benchmark
+    public long render() throws Exception {
+        try (JobWorkspace workspace = JobWorkspace.create("benchmark")) {
+            PdfEngine pdfEngine = new PdfEngine(html, settings, false, workspace);
+            try (InputStream is = pdfEngine.getPDF()) {
+                if (is == null) {
+                    throw new IllegalStateException("PDF was not generated with " + engine);
+                }
+                return IOUtils.copyLarge(is, new NullOutputStream());
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.slingr.endpoints.pdfGenerator.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import io.slingr.endpoints.pdfGenerator.ImageInliner;
+import io.slingr.endpoints.pdfGenerator.PdfGenerator;
+import io.slingr.endpoints.pdfGenerator.TemplateCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing of templates and rewriting of image URLs, the CPU bound steps before rendering.
+ * <p>
+ * Images are served by a local HTTP server and cached in the first call, so the inline benchmark
+ * measures parsing the HTML and rewriting its sources instead of the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TemplateBenchmark {
+
+    @Param({"10", "500"})
+    public int rows;
+
+    @Param({"20"})
+    public int images;
+
+    private String template;
+    private Map<String, Object> data;
+    private String imagesHtml;
+    private HttpServer server;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        template = Fixtures.template("report.ftl");
+        data = Fixtures.reportData(rows);
+
+        byte[] image = Fixtures.bytes("/header.png");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, image.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(image);
+            }
+        });
+        server.start();
+
+        StringBuilder sb = new StringBuilder(TemplateCache.getInstance().process(template, data));
+        int body = sb.lastIndexOf("</body>");
+        for (int i = 0; i < images; i++) {
+            sb.insert(body, String.format("<img src=\"http://127.0.0.1:%s/image-%s.png\" alt=\"image %s\"/>",
+                    server.getAddress().getPort(), i, i));
+        }
+        imagesHtml = sb.toString();
+        // first call fills the image cache
+        PdfGenerator.extractImageUrlsFromHtml(imagesHtml);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String processTemplate() throws Exception {
+        return TemplateCache.getInstance().process(template, data);
+    }
+
+    @Benchmark
+    public String inlineImages() {
+        return ImageInliner.rewriteSources(imagesHtml, PdfGenerator.extractImageUrlsFromHtml(imagesHtml));
+    }
+}
@@ -0,0 +1,87 @@
+package io.slingr.endpoints.pdfGenerator.workers;
+
+import io.slingr.endpoints.utils.Json;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class MergeDocumentsWorkerTest {
+
+    private PDDocument source;
+    private PDDocument target;
+
+    @Before
+    public void init() {
+        // each page has a different width, so pages can be identified after they are copied
+        source = new PDDocument();
+        for (int i = 1; i <= 5; i++) {
+            source.addPage(new PDPage(new PDRectangle(100 + i, 200)));
+        }
+        target = new PDDocument();
+    }
+
+    @After
+    public void close() throws IOException {
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void testAppendsRange() throws IOException {
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("start", 2).set("end", 4));
+
+        assertPages(2, 3, 4);
+    }
+
+    @Test
+    public void testAppendsWholeDocumentWithoutRange() throws IOException {
+        MergeDocumentsWorker.appendPages(target, source, Json.map());
+
+        assertPages(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    public void testAppendsOpenRanges() throws IOException {
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("start", 4));
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("end", 2));
+
+        assertPages(4, 5, 1, 2);
+    }
+
+    @Test
+    public void testClampsRangeToDocument() throws IOException {
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("start", 0).set("end", 2));
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("start", 5).set("end", 50));
+
+        assertPages(1, 2, 5);
+    }
+
+    @Test
+    public void testIgnoresEmptyRanges() throws IOException {
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("start", 4).set("end", 3));
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("start", 6));
+
+        assertPages();
+    }
+
+    @Test
+    public void testAppendsSamePageTwice() throws IOException {
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("start", 3).set("end", 3));
+        MergeDocumentsWorker.appendPages(target, source, Json.map().set("start", 3).set("end", 3));
+
+        assertPages(3, 3);
+    }
+
+    private void assertPages(int... pages) {
+        Assert.assertEquals(pages.length, target.getNumberOfPages());
+        for (int i = 0; i < pages.length; i++) {
+            Assert.assertEquals(100 + pages[i], target.getPage(i).getMediaBox().getWidth(), 0.001);
+        }
+    }
+}
@@ -0,0 +1 @@
+<!DOCTYPE html><html><body><h3>Page here ## ${name}</h3></body></html>
@@ -0,0 +1,19 @@
+<html>
+<head>
+    <style>
+        body { font-family: sans-serif; font-size: 12px; }
+        table { width: 100%; border-collapse: collapse; }
+        td, th { border: 1px solid #ccc; padding: 4px; }
+        th { background: #eee; }
+    </style>
+</head>
+<body>
+<h1>${title}</h1>
+<table>
+    <tr><th>Name</th><th>Quantity</th><th>Price</th></tr>
+    <#list items as item>
+    <tr><td>${item.name}</td><td>${item.quantity}</td><td>${item.price}</td></tr>
+    </#list>
+</table>
+</body>
+</html>